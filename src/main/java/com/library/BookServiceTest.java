@@ -1,5 +0,0 @@
-package com.library;
-
-public class BookServiceTest {
-
-}
@@ -3,7 +3,9 @@ package com.library;
 import com.library.controller.BookController;
 import com.library.dao.BookDAO;
 import com.library.dao.impl.GoogleSheetsBookDAO;
+import com.library.service.AsyncBookService;
 import com.library.service.BookService;
+import com.library.service.OverdueScheduler;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
@@ -11,11 +13,22 @@ import javafx.scene.Scene;
 import javafx.stage.Stage;
 
 public class Main extends Application {
+    private AsyncBookService asyncBookService;
+    private OverdueScheduler overdueScheduler;
+
     @Override
     public void start(Stage primaryStage) throws Exception {
 
+        // Хранилище Google Sheets держит книги в памяти, поэтому CachingBookDAO поверх него не
+        // нужен: кэш рассчитан на PostgresBookDAO и CSVBookDAO, где каждое чтение идет в базу или файл
         BookDAO bookDAO = new GoogleSheetsBookDAO("sheet_id");
         BookService bookService = new BookService(bookDAO);
+        // Операции с хранилищем выполняются вне потока JavaFX
+        asyncBookService = new AsyncBookService(bookService);
+        // Просроченные книги отмечаются в фоне, когда наступает их срок
+        overdueScheduler = new OverdueScheduler(asyncBookService);
+        bookService.setOverdueScheduler(overdueScheduler);
+        overdueScheduler.start();
 
         // Загрузка FXML
         FXMLLoader loader = new FXMLLoader(getClass().getResource("/book-view.fxml"));
@@ -23,13 +36,23 @@ public class Main extends Application {
 
         // Получаем контроллер и передаем ему сервис
         BookController controller = loader.getController();
-        controller.setBookService(bookService);
+        controller.setBookService(asyncBookService);
 
         primaryStage.setTitle("Библиотека книг - PostgreSQL");
         primaryStage.setScene(new Scene(root, 1000, 600));
         primaryStage.show();
     }
 
+    @Override
+    public void stop() {
+        if (overdueScheduler != null) {
+            overdueScheduler.close();
+        }
+        if (asyncBookService != null) {
+            asyncBookService.close();
+        }
+    }
+
     public static void main(String[] args) {
         launch(args);
     }
@@ -2,7 +2,8 @@ package com.library.controller;
 
 import com.library.model.Book;
 import com.library.model.BookStatus;
-import com.library.service.BookService;
+import com.library.service.AsyncBookService;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
@@ -10,7 +11,11 @@ import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
 
 import java.time.LocalDate;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 
 public class BookController {
     @FXML private TableView<Book> booksTable;
@@ -32,10 +37,12 @@ public class BookController {
     @FXML private Spinner<Integer> pagesReadSpinner;
     @FXML private TextField searchField;
 
-    private BookService bookService;
+    private AsyncBookService bookService;
     private ObservableList<Book> booksData = FXCollections.observableArrayList();
+    // Последняя запрошенная загрузка таблицы; более ранние отменяются
+    private CompletableFuture<List<Book>> pendingLoad;
 
-    public void setBookService(BookService bookService) {
+    public void setBookService(AsyncBookService bookService) {
         this.bookService = bookService;
         refreshBooksTable();
         initializeStatusComboBox();
@@ -139,12 +146,13 @@ public class BookController {
             book.setTotalPages(totalPagesSpinner.getValue());
             book.setPagesRead(pagesReadSpinner.getValue());
 
-            Long newId = bookService.addBook(book);
-            if (newId != null) {
-                showAlert(Alert.AlertType.INFORMATION, "Успех", "Книга добавлена с ID: " + newId);
-                clearFields();
-                refreshBooksTable();
-            }
+            onFxThread(bookService.addBook(book), newId -> {
+                if (newId != null) {
+                    showAlert(Alert.AlertType.INFORMATION, "Успех", "Книга добавлена с ID: " + newId);
+                    clearFields();
+                    refreshBooksTable();
+                }
+            }, "");
         } catch (Exception e) {
             showAlert(Alert.AlertType.ERROR, "Ошибка", e.getMessage());
         }
@@ -162,10 +170,8 @@ public class BookController {
 
             Optional<ButtonType> result = alert.showAndWait();
             if (result.isPresent() && result.get() == ButtonType.OK) {
-                try {
-                    // Удаление из базы данных
-                    boolean deleted = bookService.deleteBook(selectedBook.getId());
-
+                // Удаление из базы данных
+                onFxThread(bookService.deleteBook(selectedBook.getId()), deleted -> {
                     if (deleted) {
                         // Удаление из таблицы
                         booksTable.getItems().remove(selectedBook);
@@ -177,9 +183,7 @@ public class BookController {
                     } else {
                         showAlert(Alert.AlertType.ERROR, "Ошибка", "Не удалось удалить книгу из базы данных.");
                     }
-                } catch (Exception e) {
-                    showAlert(Alert.AlertType.ERROR, "Ошибка", "Не удалось удалить книгу: " + e.getMessage());
-                }
+                }, "Не удалось удалить книгу: ");
             }
         } else {
             showAlert(Alert.AlertType.WARNING, "Предупреждение", "Пожалуйста, выберите книгу для удаления.");
@@ -192,20 +196,20 @@ public class BookController {
         if (keyword == null || keyword.trim().isEmpty()) {
             refreshBooksTable();
         } else {
-            booksData.setAll(bookService.searchBooks(keyword));
+            loadBooks(bookService.searchBooks(keyword));
         }
     }
 
     @FXML
     private void handleSortByDueDate() {
-        booksData.setAll(bookService.sortByDueDate());
+        loadBooks(bookService.sortByDueDate());
     }
 
     @FXML
     private void handleGetRecommendations() {
         String favoriteGenre = genreField.getText();
         if (favoriteGenre != null && !favoriteGenre.trim().isEmpty()) {
-            booksData.setAll(bookService.getRecommendedBooks(favoriteGenre));
+            loadBooks(bookService.getRecommendedBooks(favoriteGenre));
         }
     }
 
@@ -224,7 +228,42 @@ public class BookController {
     }
 
     private void refreshBooksTable() {
-        booksData.setAll(bookService.getAllBooks());
+        loadBooks(bookService.getAllBooks());
+    }
+
+    /**
+     * Заполняет таблицу результатом запроса. Предыдущая незавершенная загрузка отменяется,
+     * чтобы ее устаревший результат не перезаписал новый.
+     */
+    private void loadBooks(CompletableFuture<List<Book>> load) {
+        if (pendingLoad != null) {
+            pendingLoad.cancel(false);
+        }
+        pendingLoad = load;
+        onFxThread(load, books -> {
+            if (pendingLoad == load) {
+                booksData.setAll(books);
+            }
+        }, "Не удалось загрузить книги: ");
+    }
+
+    /**
+     * Передает результат фоновой операции в поток JavaFX через {@link Platform#runLater}.
+     * Отмененные операции молча пропускаются, ошибки показываются с префиксом {@code errorPrefix}.
+     */
+    private <T> void onFxThread(CompletableFuture<T> operation, Consumer<T> onSuccess, String errorPrefix) {
+        operation.whenComplete((value, error) -> Platform.runLater(() -> {
+            if (operation.isCancelled()) {
+                return;
+            }
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error;
+                showAlert(Alert.AlertType.ERROR, "Ошибка", errorPrefix + cause.getMessage());
+                return;
+            }
+            onSuccess.accept(value);
+        }));
     }
 
     @FXML
@@ -3,17 +3,29 @@ package com.library.dao;
 import com.library.model.Book;
 import com.library.model.BookStatus;
 
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface BookDAO {
     // CRUD операции
     Long addBook(Book book);
+    List<Long> addBooks(Collection<Book> books);
+    // Записывает поля из Book.getDirtyFields(); книга без изменений не записывается (true).
+    // Если хранилище ведет версии и версия книги устарела, возвращает false
     boolean updateBook(Book book);
     boolean deleteBook(Long id);
     Optional<Book> getBookById(Long id);
     List<Book> getAllBooks();
 
+    // Потоковое чтение без загрузки всей таблицы; поток держит курсор или файл
+    // и должен быть закрыт (try-with-resources)
+    Stream<Book> streamAll();
+    Stream<Book> streamByStatus(BookStatus status);
+    Stream<Book> streamByGenre(String genre);
+
     // Поиск и фильтрация
     List<Book> searchBooks(String keyword);
     List<Book> filterByStatus(BookStatus status);
@@ -24,8 +36,21 @@ public interface BookDAO {
     List<Book> sortByAuthor();
     List<Book> sortByDueDate();
     List<Book> sortByPriority();
+    // Книги со сроком возврата в диапазоне [from, to] по сроку, затем по id
+    List<Book> getBooksDueBetween(LocalDate from, LocalDate to);
 
     // Управление статусами
     boolean updateStatus(Long id, BookStatus status);
     List<Book> getOverdueBooks();
+    // Переводит в OVERDUE все незавершенные книги со сроком раньше today одной операцией
+    // и возвращает id измененных книг
+    List<Long> markOverdue(LocalDate today);
+    // То же для книг из ids: меняет только те, что на today просрочены и еще не завершены
+    List<Long> markOverdue(Collection<Long> ids, LocalDate today);
+
+    // Сколько операций хранилище выдерживает одновременно; по умолчанию одна —
+    // реализация не обязана быть потокобезопасной
+    default int maxConcurrency() {
+        return 1;
+    }
 }
\ No newline at end of file
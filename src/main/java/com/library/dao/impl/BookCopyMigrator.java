@@ -0,0 +1,188 @@
+package com.library.dao.impl;
+
+import com.library.model.Book;
+import com.library.util.DatabaseConnection;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Перенос книг между CSV-файлом и PostgreSQL командой COPY. Данные идут потоком в обе стороны:
+ * в PostgreSQL книги читаются курсором {@link CSVBookDAO#streamAll()} и кодируются в поток
+ * {@code COPY ... FROM STDIN}, а вывод {@code COPY ... TO STDOUT} пишется прямо в файл в формате
+ * books.csv. Книги ни в одном направлении не собираются в памяти целиком.
+ */
+public final class BookCopyMigrator {
+    private static final String COPY_IN_SQL =
+            "COPY books (id, title, author, isbn, genre, status, added_date, due_date, priority, total_pages, pages_read) "
+                    + "FROM STDIN WITH (FORMAT csv)";
+    // Пустые строки и числа вместо NULL: в books.csv пустое поле означает null только для
+    // isbn, жанра и срока, а числовые поля обязательны. Даты форматируются явно: вывод date
+    // зависит от DateStyle сеанса, а CSVBookDAO читает только yyyy-MM-dd
+    private static final String COPY_OUT_SQL = """
+            COPY (
+                SELECT id, title, author, COALESCE(isbn, ''), COALESCE(genre, ''), status,
+                       to_char(COALESCE(added_date, CURRENT_DATE), 'YYYY-MM-DD'), to_char(due_date, 'YYYY-MM-DD'),
+                       COALESCE(priority, 1), COALESCE(total_pages, 0), COALESCE(pages_read, 0)
+                FROM books ORDER BY id
+            ) TO STDOUT WITH (FORMAT csv, FORCE_QUOTE *)""";
+    private static final int COPY_CHUNK_SIZE = 1 << 16;
+
+    private BookCopyMigrator() {
+    }
+
+    /**
+     * Заменяет содержимое таблицы books книгами из CSV с их id и переводит последовательность
+     * SERIAL за наибольший id. Очистка и загрузка выполняются одной транзакцией.
+     *
+     * @return число загруженных книг или {@code -1} при ошибке
+     */
+    public static long copyToPostgres(CSVBookDAO source) {
+        try (Connection connection = DatabaseConnection.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute("TRUNCATE books");
+                }
+                long rows = copyIn(connection.unwrap(PGConnection.class).getCopyAPI(), source);
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute("SELECT setval(pg_get_serial_sequence('books', 'id'), COALESCE(MAX(id), 0) + 1, false) FROM books");
+                }
+                connection.commit();
+                return rows;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("Ошибка загрузки книг в PostgreSQL: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Заменяет CSV-файл DAO содержимым таблицы books в порядке id. Файл подменяется атомарно
+     * под блокировкой DAO, несохраненные изменения DAO отбрасываются.
+     *
+     * @return число выгруженных книг или {@code -1} при ошибке
+     */
+    public static long copyToCsv(CSVBookDAO target) {
+        try (Connection connection = DatabaseConnection.getConnection()) {
+            CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+            long[] rows = {-1};
+            boolean replaced = target.replaceContents(out -> {
+                try {
+                    rows[0] = copyManager.copyOut(COPY_OUT_SQL, out);
+                } catch (SQLException e) {
+                    throw new IOException(e.getMessage(), e);
+                }
+            });
+            return replaced ? rows[0] : -1;
+        } catch (SQLException e) {
+            System.err.println("Ошибка выгрузки книг из PostgreSQL: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * {@code import <books.csv>} — из CSV в PostgreSQL, {@code export <books.csv>} — обратно.
+     */
+    public static void main(String[] args) {
+        if (args.length != 2 || !(args[0].equals("import") || args[0].equals("export"))) {
+            System.err.println("Использование: BookCopyMigrator import|export <books.csv>");
+            return;
+        }
+        // Создает таблицу и индексы, если их еще нет
+        new PostgresBookDAO();
+
+        // Журнальный режим учитывает замещающие записи и надгробия; уплотнение не запускается
+        try (CSVBookDAO csv = new CSVBookDAO(args[1], CSVBookDAO.Options.defaults().logStructured(1.0))) {
+            long start = System.currentTimeMillis();
+            long rows = args[0].equals("import") ? copyToPostgres(csv) : copyToCsv(csv);
+            if (rows >= 0) {
+                System.out.println("Перенесено книг: " + rows + " за " + (System.currentTimeMillis() - start) + " мс");
+            }
+        } finally {
+            DatabaseConnection.shutdown();
+        }
+    }
+
+    // Вспомогательные методы
+
+    private static long copyIn(CopyManager copyManager, CSVBookDAO source) throws SQLException {
+        CopyIn copy = copyManager.copyIn(COPY_IN_SQL);
+        try (Stream<Book> books = source.streamAll()) {
+            StringBuilder chunk = new StringBuilder(COPY_CHUNK_SIZE + 1024);
+            Iterator<Book> iterator = books.iterator();
+            while (iterator.hasNext()) {
+                appendRow(chunk, iterator.next());
+                if (chunk.length() >= COPY_CHUNK_SIZE) {
+                    writeChunk(copy, chunk);
+                }
+            }
+            writeChunk(copy, chunk);
+            return copy.endCopy();
+        } finally {
+            if (copy.isActive()) {
+                try {
+                    copy.cancelCopy();
+                } catch (SQLException ignored) {
+                    // Транзакция все равно будет откачена
+                }
+            }
+        }
+    }
+
+    private static void writeChunk(CopyIn copy, StringBuilder chunk) throws SQLException {
+        if (chunk.length() == 0) {
+            return;
+        }
+        byte[] bytes = chunk.toString().getBytes(StandardCharsets.UTF_8);
+        copy.writeToCopy(bytes, 0, bytes.length);
+        chunk.setLength(0);
+    }
+
+    /**
+     * Строка COPY в формате CSV: строки в кавычках, NULL — пустое поле без кавычек.
+     */
+    private static void appendRow(StringBuilder out, Book book) {
+        out.append(book.getId()).append(',');
+        appendQuoted(out, book.getTitle()).append(',');
+        appendQuoted(out, book.getAuthor()).append(',');
+        appendQuoted(out, book.getIsbn()).append(',');
+        appendQuoted(out, book.getGenre()).append(',');
+        out.append(book.getStatus().name()).append(',');
+        appendValue(out, book.getAddedDate()).append(',');
+        appendValue(out, book.getDueDate()).append(',');
+        appendValue(out, book.getPriority()).append(',');
+        appendValue(out, book.getTotalPages()).append(',');
+        appendValue(out, book.getPagesRead()).append('\n');
+    }
+
+    private static StringBuilder appendQuoted(StringBuilder out, String value) {
+        if (value == null) {
+            return out;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.append('"');
+            }
+            out.append(c);
+        }
+        return out.append('"');
+    }
+
+    private static StringBuilder appendValue(StringBuilder out, Object value) {
+        return value == null ? out : out.append(value);
+    }
+}
@@ -0,0 +1,243 @@
+package com.library.dao.impl;
+
+import com.library.model.Book;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Инвертированный индекс для searchBooks: подстрока без учета регистра в названии, авторе,
+ * ISBN или жанре. Поля приводятся к нижнему регистру один раз при индексации тем же
+ * {@link String#toLowerCase()}, что и в прежнем поиске перебором, поэтому результаты
+ * совпадают (в том числе для кириллицы).
+ * <p>
+ * Для каждой книги хранятся триграммы ее полей. Запрос от трех символов берет самый короткий
+ * список книг среди своих триграмм, отсеивает кандидатов по остальным спискам и проверяет
+ * оставшихся {@code contains} по сохраненному тексту. Запрос из одного-двух символов
+ * совпадает с большой частью каталога, поэтому он просматривает сохраненный текст без
+ * индекса, но тоже без приведения регистра на каждый запрос.
+ * <p>
+ * Книга занимает слот; изменение или удаление только освобождает старый слот, а списки
+ * триграмм чистятся перестройкой, когда свободных слотов становится больше занятых.
+ * Изменения не потокобезопасны; поиск можно выполнять параллельно, пока индекс не меняется.
+ */
+final class BookSearchIndex {
+    private static final int GRAM = 3;
+    private static final int MIN_REBUILD_SLOTS = 1024;
+    // Разделитель полей: не встречается в запросах, поэтому совпадение не пересекает границу полей
+    private static final char FIELD_SEPARATOR = '\u0000';
+
+    // Слоты: id книги и ее приведенный текст (null — слот освобожден)
+    private long[] slotIds = new long[16];
+    private String[] slotTexts = new String[16];
+    private int slotCount;
+    private int deadSlots;
+    private final Map<Long, Integer> slotById = new HashMap<>();
+    // Триграмма (три символа в long) -> слоты по возрастанию
+    private final Map<Long, Postings> postings = new HashMap<>();
+
+    /**
+     * Добавляет книгу или обновляет ее текст; книга с тем же текстом не переиндексируется.
+     */
+    void put(Book book) {
+        String text = foldedText(book);
+        Integer slot = slotById.get(book.getId());
+        if (slot != null) {
+            if (slotTexts[slot].equals(text)) {
+                return;
+            }
+            release(slot);
+        }
+        index(book.getId(), text);
+        rebuildIfSparse();
+    }
+
+    void remove(Long id) {
+        Integer slot = slotById.remove(id);
+        if (slot != null) {
+            release(slot);
+            rebuildIfSparse();
+        }
+    }
+
+    /**
+     * Заменяет содержимое индекса книгами {@code books}.
+     */
+    void rebuild(Iterable<Book> books) {
+        clear();
+        for (Book book : books) {
+            index(book.getId(), foldedText(book));
+        }
+    }
+
+    void clear() {
+        slotIds = new long[16];
+        slotTexts = new String[16];
+        slotCount = 0;
+        deadSlots = 0;
+        slotById.clear();
+        postings.clear();
+    }
+
+    /**
+     * Id книг, в одном из полей которых встречается {@code keyword} без учета регистра,
+     * по возрастанию.
+     */
+    List<Long> search(String keyword) {
+        String folded = keyword.toLowerCase();
+        List<Long> ids = new ArrayList<>();
+        if (folded.indexOf(FIELD_SEPARATOR) >= 0) {
+            return ids;
+        }
+        if (folded.length() < GRAM) {
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (slotTexts[slot] != null && slotTexts[slot].contains(folded)) {
+                    ids.add(slotIds[slot]);
+                }
+            }
+        } else {
+            Postings[] lists = postingsFor(folded);
+            if (lists == null) {
+                return ids;
+            }
+            Postings shortest = lists[0];
+            for (int i = 0; i < shortest.size; i++) {
+                int slot = shortest.slots[i];
+                if (slotTexts[slot] != null && containsAll(lists, slot) && slotTexts[slot].contains(folded)) {
+                    ids.add(slotIds[slot]);
+                }
+            }
+        }
+        ids.sort(null);
+        return ids;
+    }
+
+    int size() {
+        return slotById.size();
+    }
+
+    // Вспомогательные методы
+
+    private void index(long id, String text) {
+        if (slotCount == slotIds.length) {
+            slotIds = Arrays.copyOf(slotIds, slotCount * 2);
+            slotTexts = Arrays.copyOf(slotTexts, slotCount * 2);
+        }
+        int slot = slotCount++;
+        slotIds[slot] = id;
+        slotTexts[slot] = text;
+        slotById.put(id, slot);
+
+        long[] grams = new long[Math.max(0, text.length() - GRAM + 1)];
+        int count = 0;
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            long gram = gram(text, i);
+            if (gram >= 0) {
+                grams[count++] = gram;
+            }
+        }
+        Arrays.sort(grams, 0, count);
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || grams[i] != grams[i - 1]) {
+                // Слоты выдаются по возрастанию, поэтому списки остаются упорядоченными
+                postings.computeIfAbsent(grams[i], key -> new Postings()).add(slot);
+            }
+        }
+    }
+
+    private void release(int slot) {
+        slotTexts[slot] = null;
+        deadSlots++;
+    }
+
+    private void rebuildIfSparse() {
+        if (deadSlots < MIN_REBUILD_SLOTS || deadSlots <= slotCount - deadSlots) {
+            return;
+        }
+        long[] ids = slotIds;
+        String[] texts = slotTexts;
+        int count = slotCount;
+        clear();
+        for (int slot = 0; slot < count; slot++) {
+            if (texts[slot] != null) {
+                index(ids[slot], texts[slot]);
+            }
+        }
+    }
+
+    /**
+     * Списки триграмм запроса, самый короткий первым, или {@code null}, если какой-то
+     * триграммы нет ни у одной книги.
+     */
+    private Postings[] postingsFor(String folded) {
+        List<Postings> lists = new ArrayList<>();
+        for (int i = 0; i + GRAM <= folded.length(); i++) {
+            Postings list = postings.get(gram(folded, i));
+            if (list == null) {
+                return null;
+            }
+            if (!lists.contains(list)) {
+                lists.add(list);
+            }
+        }
+        lists.sort((a, b) -> Integer.compare(a.size, b.size));
+        return lists.toArray(new Postings[0]);
+    }
+
+    private static boolean containsAll(Postings[] lists, int slot) {
+        for (int i = 1; i < lists.length; i++) {
+            if (Arrays.binarySearch(lists[i].slots, 0, lists[i].size, slot) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Триграмма с позиции {@code start} или {@code -1}, если она пересекает границу полей.
+     */
+    private static long gram(String text, int start) {
+        long gram = 0;
+        for (int i = start; i < start + GRAM; i++) {
+            char c = text.charAt(i);
+            if (c == FIELD_SEPARATOR) {
+                return -1;
+            }
+            gram = (gram << 16) | c;
+        }
+        return gram;
+    }
+
+    private static String foldedText(Book book) {
+        StringBuilder text = new StringBuilder();
+        appendField(text, book.getTitle());
+        appendField(text, book.getAuthor());
+        appendField(text, book.getIsbn());
+        appendField(text, book.getGenre());
+        return text.toString();
+    }
+
+    private static void appendField(StringBuilder text, String value) {
+        if (!text.isEmpty()) {
+            text.append(FIELD_SEPARATOR);
+        }
+        if (value != null) {
+            text.append(value.toLowerCase());
+        }
+    }
+
+    private static final class Postings {
+        private int[] slots = new int[4];
+        private int size;
+
+        void add(int slot) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            slots[size++] = slot;
+        }
+    }
+}
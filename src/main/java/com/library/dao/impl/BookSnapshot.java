@@ -0,0 +1,240 @@
+package com.library.dao.impl;
+
+import com.library.model.Book;
+import com.library.model.BookStatus;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Двоичный снимок {@code books.csv.snap} для быстрого старта. CSV остается форматом обмена,
+ * а снимок хранит те же книги в компактном виде: строки фиксированной ширины (числа и даты
+ * как epoch-day) плюс пул уникальных строк. Снимок считается актуальным, пока совпадает
+ * контрольная сумма CRC32C CSV-файла. Размер отсекает устаревший снимок без чтения CSV, а
+ * время изменения не доверяется: запись на месте той же длины (например, обновление через
+ * индекс смещений) в пределах одного тика часов файловой системы его не меняет.
+ *
+ * <pre>
+ * заголовок: magic, version, csvSize, csvModified, csvChecksum, rowCount, maxId, poolOffset
+ * строка:    id(8) title(4) author(4) isbn(4) genre(4) status(1) added(4) due(4)
+ *            priority(4) totalPages(4) pagesRead(4)
+ * пул:       count(4), затем length(4) + UTF-8 байты для каждой строки
+ * </pre>
+ */
+final class BookSnapshot {
+    private static final int MAGIC = 0x42534E50; // "BSNP"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8 + 4 + 8 + 8;
+    private static final int ROW_SIZE = 8 + 4 * 4 + 1 + 4 * 5;
+    private static final int NO_STRING = -1;
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    private static final int NO_NUMBER = Integer.MIN_VALUE;
+    private static final BookStatus[] STATUSES = BookStatus.values();
+
+    private BookSnapshot() {
+    }
+
+    static Path pathFor(Path csvPath) {
+        return csvPath.resolveSibling(csvPath.getFileName() + ".snap");
+    }
+
+    /**
+     * Максимальный id, записанный в актуальном снимке, или {@code -1}, если снимка нет или он устарел.
+     */
+    static long freshMaxId(Path csvPath) {
+        try (FileChannel channel = FileChannel.open(pathFor(csvPath), StandardOpenOption.READ)) {
+            ByteBuffer header = readHeader(channel);
+            return header != null && isFresh(csvPath, header) ? header.getLong(36) : -1;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Загружает книги из актуального снимка или возвращает {@code null}, если снимок нужно перестроить.
+     */
+    static List<Book> loadIfFresh(Path csvPath) {
+        try (FileChannel channel = FileChannel.open(pathFor(csvPath), StandardOpenOption.READ)) {
+            ByteBuffer header = readHeader(channel);
+            if (header == null || !isFresh(csvPath, header)) {
+                return null;
+            }
+            int rowCount = header.getInt(32);
+            long poolOffset = header.getLong(44);
+
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            String[] pool = readPool(data, (int) poolOffset);
+
+            List<Book> books = new ArrayList<>(rowCount);
+            int position = HEADER_SIZE;
+            for (int i = 0; i < rowCount; i++, position += ROW_SIZE) {
+                Book book = new Book();
+                book.setId(data.getLong(position));
+                book.setTitle(string(pool, data.getInt(position + 8)));
+                book.setAuthor(string(pool, data.getInt(position + 12)));
+                book.setIsbn(string(pool, data.getInt(position + 16)));
+                book.setGenre(string(pool, data.getInt(position + 20)));
+                book.setStatus(STATUSES[data.get(position + 24)]);
+                book.setAddedDate(date(data.getInt(position + 25)));
+                book.setDueDate(date(data.getInt(position + 29)));
+                book.setPriority(number(data.getInt(position + 33)));
+                book.setTotalPages(number(data.getInt(position + 37)));
+                book.setPagesRead(number(data.getInt(position + 41)));
+                book.markClean();
+                books.add(book);
+            }
+            return books;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Записывает снимок книг, соответствующий текущему содержимому CSV-файла.
+     */
+    static void write(Path csvPath, List<Book> books, long maxId) throws IOException {
+        Path target = pathFor(csvPath).toAbsolutePath();
+        long csvSize = Files.size(csvPath);
+        long csvModified = Files.getLastModifiedTime(csvPath).toMillis();
+        long checksum = checksum(csvPath);
+
+        Map<String, Integer> poolIndex = new HashMap<>();
+        List<String> pool = new ArrayList<>();
+
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(csvSize);
+                out.writeLong(csvModified); // Только для справки: актуальность решает контрольная сумма
+                out.writeLong(checksum);
+                out.writeInt(books.size());
+                out.writeLong(maxId);
+                out.writeLong(HEADER_SIZE + (long) books.size() * ROW_SIZE);
+
+                for (Book book : books) {
+                    out.writeLong(book.getId());
+                    out.writeInt(intern(book.getTitle(), poolIndex, pool));
+                    out.writeInt(intern(book.getAuthor(), poolIndex, pool));
+                    out.writeInt(intern(book.getIsbn(), poolIndex, pool));
+                    out.writeInt(intern(book.getGenre(), poolIndex, pool));
+                    out.writeByte(book.getStatus().ordinal());
+                    out.writeInt(book.getAddedDate() != null ? (int) book.getAddedDate().toEpochDay() : NO_DATE);
+                    out.writeInt(book.getDueDate() != null ? (int) book.getDueDate().toEpochDay() : NO_DATE);
+                    out.writeInt(book.getPriority() != null ? book.getPriority() : NO_NUMBER);
+                    out.writeInt(book.getTotalPages() != null ? book.getTotalPages() : NO_NUMBER);
+                    out.writeInt(book.getPagesRead() != null ? book.getPagesRead() : NO_NUMBER);
+                }
+
+                out.writeInt(pool.size());
+                for (String value : pool) {
+                    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Вспомогательные методы
+
+    private static ByteBuffer readHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                return null;
+            }
+        }
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            return null;
+        }
+        return header;
+    }
+
+    /**
+     * Снимок актуален, если совпадают размер и контрольная сумма CSV-файла.
+     */
+    private static boolean isFresh(Path csvPath, ByteBuffer header) throws IOException {
+        if (!Files.exists(csvPath) || Files.size(csvPath) != header.getLong(8)) {
+            return false;
+        }
+        return checksum(csvPath) == header.getLong(24);
+    }
+
+    private static long checksum(Path csvPath) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (FileChannel channel = FileChannel.open(csvPath, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                long length = Math.min(size - position, 256L * 1024 * 1024);
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+                position += length;
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static String[] readPool(ByteBuffer data, int position) {
+        int count = data.getInt(position);
+        position += 4;
+        String[] pool = new String[count];
+        byte[] scratch = new byte[256];
+        for (int i = 0; i < count; i++) {
+            int length = data.getInt(position);
+            position += 4;
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            data.get(position, scratch, 0, length);
+            pool[i] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+            position += length;
+        }
+        return pool;
+    }
+
+    private static int intern(String value, Map<String, Integer> poolIndex, List<String> pool) {
+        if (value == null) {
+            return NO_STRING;
+        }
+        return poolIndex.computeIfAbsent(value, v -> {
+            pool.add(v);
+            return pool.size() - 1;
+        });
+    }
+
+    private static String string(String[] pool, int index) {
+        return index == NO_STRING ? null : pool[index];
+    }
+
+    private static LocalDate date(int epochDay) {
+        return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    private static Integer number(int value) {
+        return value == NO_NUMBER ? null : value;
+    }
+}
@@ -7,23 +7,210 @@ import com.opencsv.CSVReader;
 import com.opencsv.CSVWriter;
 import com.opencsv.exceptions.CsvException;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Хранение книг в CSV-файле. DAO потокобезопасен: чтения идут параллельно под общей
+ * блокировкой, изменения — под исключительной; блокировка общая для всех DAO одного файла
+ * в процессе и дополнена блокировкой файла-спутника {@code <файл>.lock} для других процессов.
+ * Перед каждым изменением DAO подхватывает записи, сделанные другими процессами, поэтому
+ * следующий id и журнальная статистика не расходятся с файлом. Режимы с отложенной записью
+ * (групповая фиксация, резидентный индекс) рассчитаны на один пишущий процесс.
+ */
+public class CSVBookDAO implements BookDAO, AutoCloseable {
+    private static final String[] HEADER = {"id", "title", "author", "isbn", "genre", "status",
+            "added_date", "due_date", "priority", "total_pages", "pages_read"};
+    private static final long MIN_COMPACTION_RECORDS = 100;
 
-public class CSVBookDAO implements BookDAO {
     private final String csvFile;
-    private Long nextId = 1L;
+    private final Options options;
+    private final CsvFileLock fileLock;
+    // Декодер не потокобезопасен — у каждого читающего потока свой
+    private final ThreadLocal<CsvBookDecoder> decoder = ThreadLocal.withInitial(CsvBookDecoder::new);
+    private final CsvParallelLoader parallelLoader = new CsvParallelLoader();
+    private final CsvOffsetIndex offsetIndex;
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    // Образ файла в памяти: накопленные изменения групповой фиксации или резидентный индекс
+    private LinkedHashMap<Long, Book> image;
+    private int pendingChanges;
+    // Поисковый индекс и отсортированные представления резидентного образа; в остальных режимах null
+    private final BookSearchIndex searchIndex;
+    private final SortedBookViews sortedViews;
+    // Состояние файла после нашей последней записи: иное значит, что файл менял кто-то еще
+    private volatile long fileModified = -1;
+    private volatile long fileSize = -1;
+    private ScheduledExecutorService backgroundExecutor;
+    private ScheduledFuture<?> scheduledCommit;
+
+    // Журнальный режим: живые id и общее число записей в файле для оценки доли мертвых
+    private Set<Long> liveIds;
+    private long logRecords;
+    private boolean compactionRunning;
+    private final AtomicBoolean snapshotWritten = new AtomicBoolean();
 
     public CSVBookDAO(String csvFile) {
+        this(csvFile, Options.defaults());
+    }
+
+    /**
+     * Создает DAO с групповой фиксацией изменений: обновления, удаления и смены статуса,
+     * пришедшие в течение {@code commitWindowMillis} (но не более {@code maxPendingChanges}),
+     * применяются к образу файла в памяти и записываются на диск одной атомарной заменой.
+     */
+    public CSVBookDAO(String csvFile, long commitWindowMillis, int maxPendingChanges) {
+        this(csvFile, Options.defaults().groupCommit(commitWindowMillis, maxPendingChanges));
+    }
+
+    public CSVBookDAO(String csvFile, Options options) {
+        if (options.logStructured && (options.residentIndex || options.isDeferredWrite())) {
+            throw new IllegalArgumentException(
+                    "Журнальный режим несовместим с групповой фиксацией и резидентным индексом");
+        }
         this.csvFile = csvFile;
-        this.nextId = calculateNextId();
+        this.options = options;
+        this.fileLock = CsvFileLock.forFile(Paths.get(csvFile));
+        this.searchIndex = options.residentIndex ? new BookSearchIndex() : null;
+        this.sortedViews = options.residentIndex ? new SortedBookViews() : null;
+
+        fileLock.lockWrite();
+        try {
+            this.offsetIndex = options.offsetIndex ? new CsvOffsetIndex(Paths.get(csvFile), parallelLoader) : null;
+            if (options.residentIndex) {
+                reloadImage();
+                long snapshotMaxId = options.snapshot ? BookSnapshot.freshMaxId(Paths.get(csvFile)) : -1;
+                nextId.set(Math.max(snapshotMaxId, maxImageId()) + 1);
+            } else {
+                long snapshotMaxId = options.snapshot ? BookSnapshot.freshMaxId(Paths.get(csvFile)) : -1;
+                nextId.set(snapshotMaxId >= 0 ? snapshotMaxId + 1 : calculateNextId());
+            }
+            if (options.logStructured) {
+                loadLogStats();
+            }
+            rememberFileState();
+        } finally {
+            fileLock.unlockWrite();
+        }
     }
 
-    private Long calculateNextId() {
+    /**
+     * Настройки режимов хранения CSV-файла.
+     */
+    public static final class Options {
+        private long commitWindowMillis;
+        private int maxPendingChanges = 1;
+        private boolean residentIndex;
+        private boolean offsetIndex;
+        private boolean logStructured;
+        private double maxDeadRatio;
+        private boolean snapshot;
+
+        public static Options defaults() {
+            return new Options();
+        }
+
+        /**
+         * Групповая фиксация: изменения за окно {@code windowMillis} (не более {@code maxChanges})
+         * записываются на диск одним проходом.
+         */
+        public Options groupCommit(long windowMillis, int maxChanges) {
+            this.commitWindowMillis = windowMillis;
+            this.maxPendingChanges = Math.max(1, maxChanges);
+            return this;
+        }
+
+        /**
+         * Резидентный индекс: файл разбирается один раз при создании DAO, чтение идет из памяти,
+         * а изменения попадают на диск фоновой отложенной записью через {@code writeBehindMillis}.
+         */
+        public Options residentIndex(long writeBehindMillis) {
+            this.residentIndex = true;
+            this.commitWindowMillis = Math.max(1, writeBehindMillis);
+            this.maxPendingChanges = Integer.MAX_VALUE;
+            return this;
+        }
+
+        /**
+         * Индекс-спутник {@code <файл>.idx} со смещениями записей: {@code getBookById},
+         * {@code updateBook} и {@code updateStatus} читают одну запись позиционно, а не весь файл.
+         */
+        public Options offsetIndex() {
+            this.offsetIndex = true;
+            return this;
+        }
+
+        /**
+         * Журнальный режим: обновления дописываются в конец файла замещающими записями,
+         * удаления — надгробиями (запись из одного id). Когда доля мертвых записей превышает
+         * {@code maxDeadRatio}, фоновое уплотнение переписывает файл в канонический вид.
+         * Несовместим с групповой фиксацией и резидентным индексом: конструктор DAO отклоняет
+         * такие настройки с {@link IllegalArgumentException}.
+         */
+        public Options logStructured(double maxDeadRatio) {
+            this.logStructured = true;
+            this.maxDeadRatio = maxDeadRatio;
+            return this;
+        }
+
+        /**
+         * Двоичный снимок {@code <файл>.snap} рядом с CSV: при старте следующий id и первая
+         * загрузка книг берутся из снимка, пока он соответствует CSV-файлу. Снимок обновляется
+         * после первого полного разбора CSV и при закрытии DAO.
+         */
+        public Options snapshot() {
+            this.snapshot = true;
+            return this;
+        }
+
+        private boolean isDeferredWrite() {
+            return commitWindowMillis > 0 && maxPendingChanges > 1;
+        }
+    }
+
+    private long calculateNextId() {
+        Path path = Paths.get(csvFile);
+        try {
+            if (isLargeFile(path)) {
+                return parallelLoader.maxId(path) + 1;
+            }
+            ByteBuffer buffer = CsvBookDecoder.map(path);
+            return decoder.get().maxId(buffer, 0, buffer.limit(), true) + 1;
+        } catch (IOException e) {
+            // Не удалось отобразить файл в память — считаем через OpenCSV
+        }
+
         try (CSVReader reader = new CSVReader(new FileReader(csvFile))) {
             List<String[]> allData = reader.readAll();
             return allData.stream()
@@ -38,107 +225,276 @@ public class CSVBookDAO implements BookDAO {
 
     @Override
     public Long addBook(Book book) {
-        List<String[]> allData = readAllData();
+        return writeLocked(() -> {
+            // Новая запись дописывается в конец файла, существующие строки не перечитываются.
+            // Id из последовательности не возвращается, даже если запись не удалась
+            Long id = nextId.getAndIncrement();
 
-        String[] newRecord = {
-                String.valueOf(nextId++),
-                book.getTitle(),
-                book.getAuthor(),
-                book.getIsbn(),
-                book.getGenre(),
-                book.getStatus().name(),
-                book.getAddedDate().toString(),
-                book.getDueDate() != null ? book.getDueDate().toString() : "",
-                String.valueOf(book.getPriority()),
-                String.valueOf(book.getTotalPages()),
-                String.valueOf(book.getPagesRead())
-        };
+            if (image != null) {
+                // Запись попадет в файл вместе с остальными изменениями образа
+                Book stored = new Book(book);
+                stored.setId(id);
+                stored.markClean();
+                image.put(id, stored);
+                indexResident(stored);
+                return commit(image) ? id : null;
+            }
 
-        allData.add(newRecord);
+            long offset = appendRow(bookToRow(id, book));
+            if (offset < 0) {
+                return null;
+            }
 
-        try (CSVWriter writer = new CSVWriter(new FileWriter(csvFile))) {
-            writer.writeAll(allData);
-        } catch (IOException e) {
-            System.err.println("Ошибка записи в CSV: " + e.getMessage());
-            return null;
-        }
+            if (offsetIndex != null) {
+                offsetIndex.recordAppend(id, offset);
+            }
+            if (options.logStructured) {
+                liveIds.add(id);
+                logRecords++;
+            }
+            return id;
+        });
+    }
+
+    /**
+     * Добавляет книги одной записью в файл: строки дописываются в конец одним потоком
+     * (или попадают в образ одной фиксацией), id выделяются из последовательности подряд.
+     */
+    @Override
+    public List<Long> addBooks(Collection<Book> books) {
+        return writeLocked(() -> {
+            List<Long> ids = new ArrayList<>(books.size());
+            if (books.isEmpty()) {
+                return ids;
+            }
+            long id = nextId.getAndAdd(books.size());
+
+            if (image != null) {
+                for (Book book : books) {
+                    Book stored = new Book(book);
+                    stored.setId(id);
+                    stored.markClean();
+                    image.put(id, stored);
+                    indexResident(stored);
+                    ids.add(id++);
+                }
+                return commit(image) ? ids : new ArrayList<>();
+            }
 
-        return nextId - 1;
+            List<String[]> rows = new ArrayList<>(books.size());
+            for (Book book : books) {
+                rows.add(bookToRow(id, book));
+                ids.add(id++);
+            }
+            long[] offsets = appendRows(rows);
+            if (offsets == null) {
+                return new ArrayList<>();
+            }
+
+            if (offsetIndex != null) {
+                offsetIndex.recordAppends(ids, offsets);
+            }
+            if (options.logStructured) {
+                liveIds.addAll(ids);
+                logRecords += ids.size();
+            }
+            return ids;
+        });
     }
 
     @Override
     public boolean updateBook(Book book) {
-        List<String[]> allData = readAllData();
-        boolean found = false;
+        if (!book.isDirty()) {
+            // Изменений с момента загрузки нет — записывать нечего, но книга должна существовать
+            return writeLocked(() -> containsBookLocked(book.getId()));
+        }
+        boolean updated = writeLocked(() -> updateBookLocked(book));
+        if (updated) {
+            book.markClean();
+        }
+        return updated;
+    }
 
-        for (int i = 1; i < allData.size(); i++) {
-            String[] row = allData.get(i);
-            if (row.length > 0 && row[0].equals(String.valueOf(book.getId()))) {
-                allData.set(i, new String[]{
-                        String.valueOf(book.getId()),
-                        book.getTitle(),
-                        book.getAuthor(),
-                        book.getIsbn(),
-                        book.getGenre(),
-                        book.getStatus().name(),
-                        book.getAddedDate().toString(),
-                        book.getDueDate() != null ? book.getDueDate().toString() : "",
-                        String.valueOf(book.getPriority()),
-                        String.valueOf(book.getTotalPages()),
-                        String.valueOf(book.getPagesRead())
-                });
-                found = true;
-                break;
+    private boolean containsBookLocked(Long id) {
+        if (useOffsetIndex()) {
+            return offsetIndex.offsetOf(id) != null;
+        }
+        if (useLog()) {
+            return liveIds.contains(id);
+        }
+        return image != null ? image().containsKey(id) : findBook(id).isPresent();
+    }
+
+    private boolean updateBookLocked(Book book) {
+        if (useOffsetIndex()) {
+            if (offsetIndex.offsetOf(book.getId()) == null) {
+                return false;
+            }
+            // В журнале запись только дописывается: перезапись на месте не меняет ни размер, ни
+            // файл, и уплотнение, уже разобравшее прежнюю версию, молча вернуло бы ее
+            if (!useLog() && updateInPlace(book)) {
+                return true;
             }
         }
+        if (useLog()) {
+            if (!liveIds.contains(book.getId())) {
+                return false;
+            }
+            if (!appendLogRecord(book.getId(), bookToRow(book.getId(), book), false)) {
+                return false;
+            }
+            scheduleCompactionIfNeeded();
+            return true;
+        }
 
-        if (found) {
-            return writeAllData(allData);
+        Map<Long, Book> books = image();
+        if (!books.containsKey(book.getId())) {
+            return false;
         }
-        return false;
+        Book stored = new Book(book);
+        stored.markClean();
+        books.put(book.getId(), stored);
+        if (books == image) {
+            indexResident(stored);
+        }
+        return commit(books);
     }
 
     @Override
     public boolean deleteBook(Long id) {
-        List<String[]> allData = readAllData();
-        boolean removed = allData.removeIf(row ->
-                row.length > 0 && row[0].equals(String.valueOf(id)) && !row[0].equals("id")
-        );
+        return writeLocked(() -> {
+            if (useLog()) {
+                if (!liveIds.contains(id) || !appendLogRecord(id, new String[]{String.valueOf(id)}, true)) {
+                    return false;
+                }
+                liveIds.remove(id);
+                scheduleCompactionIfNeeded();
+                return true;
+            }
 
-        if (removed) {
-            return writeAllData(allData);
-        }
-        return false;
+            Map<Long, Book> books = image();
+            if (books.remove(id) == null) {
+                return false;
+            }
+            if (books == image) {
+                unindexResident(id);
+            }
+            return commit(books);
+        });
     }
 
     @Override
     public Optional<Book> getBookById(Long id) {
-        List<String[]> allData = readAllData();
+        return readLocked(() -> findBook(id));
+    }
 
-        for (int i = 1; i < allData.size(); i++) {
-            String[] row = allData.get(i);
-            if (row.length > 0 && row[0].equals(String.valueOf(id))) {
-                return Optional.of(convertRowToBook(row));
-            }
+    private Optional<Book> findBook(Long id) {
+        if (image != null) {
+            Book book = image.get(id);
+            return book != null ? Optional.of(new Book(book)) : Optional.empty();
+        }
+        if (offsetIndex != null) {
+            return findIndexed(id);
         }
 
-        return Optional.empty();
+        // В журнале с мертвыми записями побеждает последняя версия, поэтому файл читается
+        // до конца; в остальных случаях запись с id одна и разбор останавливается на ней
+        boolean lastWins = useLog() && logRecords != liveIds.size();
+        Book[] found = new Book[1];
+        scanBooks(book -> {
+            if (!book.getId().equals(id)) {
+                return true;
+            }
+            found[0] = CsvBookDecoder.isTombstone(book) ? null : book;
+            return lastWins;
+        });
+        return Optional.ofNullable(found[0]);
     }
 
     @Override
     public List<Book> getAllBooks() {
-        List<String[]> allData = readAllData();
-        List<Book> books = new ArrayList<>();
+        return readLocked(this::allBooks);
+    }
 
-        for (int i = 1; i < allData.size(); i++) {
-            books.add(convertRowToBook(allData.get(i)));
+    private Stream<Book> openStream() {
+        if (image != null) {
+            return new ArrayList<>(image.values()).stream().map(Book::new);
         }
 
-        return books;
+        Path path = Paths.get(csvFile);
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return Stream.empty();
+        } catch (IOException e) {
+            System.err.println("Ошибка чтения CSV: " + e.getMessage());
+            return Stream.empty();
+        }
+
+        try {
+            long size = channel.size();
+            long[] bounds = size >= CsvParallelLoader.PARALLEL_THRESHOLD
+                    ? parallelLoader.recordBoundaries(channel, size) : new long[]{0, size};
+            // В журнале с мертвыми записями выдается только последняя версия каждой записи
+            Map<Long, Long> lastOffsets = options.logStructured && logRecords != liveIds.size()
+                    ? parallelLoader.recordOffsets(path).offsets() : null;
+            CsvBookCursor cursor = new CsvBookCursor(channel, bounds, lastOffsets);
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor,
+                    Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(cursor::close);
+        } catch (IOException e) {
+            System.err.println("Ошибка чтения CSV: " + e.getMessage());
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            return Stream.empty();
+        }
+    }
+
+    private List<Book> allBooks() {
+        if (image != null) {
+            List<Book> books = new ArrayList<>(image.size());
+            for (Book book : image.values()) {
+                books.add(new Book(book));
+            }
+            return books;
+        }
+
+        return loadAllBooks();
+    }
+
+    /**
+     * Разбирает файл лениво, по одной книге; поток нужно закрыть, чтобы освободить файл.
+     */
+    @Override
+    public Stream<Book> streamAll() {
+        return readLocked(this::openStream);
+    }
+
+    @Override
+    public Stream<Book> streamByStatus(BookStatus status) {
+        return streamAll().filter(book -> book.getStatus() == status);
+    }
+
+    @Override
+    public Stream<Book> streamByGenre(String genre) {
+        return streamAll().filter(book -> book.getGenre() != null && book.getGenre().equalsIgnoreCase(genre));
     }
 
     @Override
     public List<Book> searchBooks(String keyword) {
+        if (searchIndex != null) {
+            // Резидентный режим: кандидаты из инвертированного индекса, без перебора образа
+            return readLocked(() -> {
+                List<Long> ids = searchIndex.search(keyword);
+                List<Book> found = new ArrayList<>(ids.size());
+                for (Long id : ids) {
+                    found.add(new Book(image.get(id)));
+                }
+                return found;
+            });
+        }
         String lowerKeyword = keyword.toLowerCase();
         return getAllBooks().stream()
                 .filter(book ->
@@ -166,6 +522,9 @@ public class CSVBookDAO implements BookDAO {
 
     @Override
     public List<Book> sortByTitle() {
+        if (sortedViews != null) {
+            return readLocked(() -> copies(sortedViews.byTitle()));
+        }
         return getAllBooks().stream()
                 .sorted(Comparator.comparing(com.library.model.Book::getTitle))
                 .collect(Collectors.toList());
@@ -173,6 +532,9 @@ public class CSVBookDAO implements BookDAO {
 
     @Override
     public List<Book> sortByAuthor() {
+        if (sortedViews != null) {
+            return readLocked(() -> copies(sortedViews.byAuthor()));
+        }
         return getAllBooks().stream()
                 .sorted(Comparator.comparing(com.library.model.Book::getAuthor))
                 .collect(Collectors.toList());
@@ -180,6 +542,9 @@ public class CSVBookDAO implements BookDAO {
 
     @Override
     public List<Book> sortByDueDate() {
+        if (sortedViews != null) {
+            return readLocked(() -> copies(sortedViews.byDueDate()));
+        }
         return getAllBooks().stream()
                 .sorted(Comparator.comparing(book ->
                         book.getDueDate() != null ? book.getDueDate() : LocalDate.MAX))
@@ -188,6 +553,9 @@ public class CSVBookDAO implements BookDAO {
 
     @Override
     public List<Book> sortByPriority() {
+        if (sortedViews != null) {
+            return readLocked(() -> copies(sortedViews.byPriority()));
+        }
         return getAllBooks().stream()
                 .sorted(Comparator.comparing(com.library.model.Book::getPriority).reversed())
                 .collect(Collectors.toList());
@@ -195,18 +563,63 @@ public class CSVBookDAO implements BookDAO {
 
     @Override
     public boolean updateStatus(Long id, BookStatus status) {
-        Optional<Book> bookOpt = getBookById(id);
-        if (bookOpt.isPresent()) {
-            Book book = bookOpt.get();
+        return writeLocked(() -> {
+            if (useOffsetIndex() || useLog()) {
+                Optional<Book> current = findBook(id);
+                if (current.isEmpty()) {
+                    return false;
+                }
+                Book book = current.get();
+                book.setStatus(status);
+                return !book.isDirty() || updateBookLocked(book);
+            }
+
+            Map<Long, Book> books = image();
+            Book book = books.get(id);
+            if (book == null) {
+                return false;
+            }
+            if (book.getStatus() == status) {
+                return true;
+            }
             book.setStatus(status);
-            return updateBook(book);
+            book.markClean();
+            return commit(books);
+        });
+    }
+
+    /**
+     * В резидентном режиме — срез представления по сроку, иначе один проход по файлу.
+     */
+    @Override
+    public List<Book> getBooksDueBetween(LocalDate from, LocalDate to) {
+        if (sortedViews != null) {
+            return readLocked(() -> copies(sortedViews.dueBetween(from, to)));
+        }
+        try (Stream<Book> books = streamAll()) {
+            return books
+                    .filter(book -> book.getDueDate() != null
+                            && !book.getDueDate().isBefore(from) && !book.getDueDate().isAfter(to))
+                    .sorted(Comparator.comparing(Book::getDueDate).thenComparing(Book::getId))
+                    .collect(Collectors.toList());
         }
-        return false;
     }
 
     @Override
     public List<Book> getOverdueBooks() {
         LocalDate today = LocalDate.now();
+        if (sortedViews != null) {
+            return readLocked(() -> {
+                List<Book> overdue = new ArrayList<>();
+                for (Book book : sortedViews.dueBefore(today)) {
+                    if (book.getStatus() != BookStatus.COMPLETED) {
+                        overdue.add(new Book(book));
+                    }
+                }
+                overdue.sort(Comparator.comparing(Book::getId));
+                return overdue;
+            });
+        }
         return getAllBooks().stream()
                 .filter(book -> book.getDueDate() != null &&
                         book.getDueDate().isBefore(today) &&
@@ -214,31 +627,850 @@ public class CSVBookDAO implements BookDAO {
                 .collect(Collectors.toList());
     }
 
+    @Override
+    public int maxConcurrency() {
+        // Чтения идут параллельно под общей блокировкой, записи упорядочивает блокировка файла
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Отмечает просроченные книги за один проход по файлу и одну запись: в журнальном режиме
+     * замещающие записи дописываются одним блоком, иначе файл (или образ) переписывается один раз.
+     */
+    @Override
+    public List<Long> markOverdue(LocalDate today) {
+        return writeLocked(() -> markOverdueLocked(null, today));
+    }
+
+    /**
+     * Как {@link #markOverdue(LocalDate)}, но только для книг из {@code ids}. При образе в памяти
+     * книги находятся по id без прохода по образу, иначе нужен тот же один проход по файлу.
+     */
+    @Override
+    public List<Long> markOverdue(Collection<Long> ids, LocalDate today) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Set<Long> only = new HashSet<>(ids);
+        return writeLocked(() -> markOverdueLocked(only, today));
+    }
+
+    // only == null — все книги
+    private List<Long> markOverdueLocked(Set<Long> only, LocalDate today) {
+        List<Long> ids = new ArrayList<>();
+
+        if (useLog()) {
+            List<String[]> rows = new ArrayList<>();
+            try (Stream<Book> books = openStream()) {
+                books.filter(book -> (only == null || only.contains(book.getId())) && isNewlyOverdue(book, today))
+                        .forEach(book -> {
+                            book.setStatus(BookStatus.OVERDUE);
+                            ids.add(book.getId());
+                            rows.add(bookToRow(book.getId(), book));
+                        });
+            }
+            if (rows.isEmpty()) {
+                return ids;
+            }
+            long[] offsets = appendRows(rows);
+            if (offsets == null) {
+                return new ArrayList<>();
+            }
+            if (offsetIndex != null) {
+                offsetIndex.recordAppends(ids, offsets);
+            }
+            logRecords += rows.size();
+            scheduleCompactionIfNeeded();
+            return ids;
+        }
+
+        Map<Long, Book> books = image();
+        Collection<Book> candidates = books.values();
+        if (only != null && only.size() < books.size()) {
+            candidates = new ArrayList<>(only.size());
+            for (Long id : only) {
+                Book book = books.get(id);
+                if (book != null) {
+                    candidates.add(book);
+                }
+            }
+        }
+        for (Book book : candidates) {
+            if ((only == null || only.contains(book.getId())) && isNewlyOverdue(book, today)) {
+                book.setStatus(BookStatus.OVERDUE);
+                ids.add(book.getId());
+            }
+        }
+        if (ids.isEmpty()) {
+            return ids;
+        }
+        if (only != null) {
+            ids.sort(null);
+        }
+        return commit(books) ? ids : new ArrayList<>();
+    }
+
+    private boolean isNewlyOverdue(Book book, LocalDate today) {
+        return book.getDueDate() != null && book.getDueDate().isBefore(today)
+                && book.getStatus() != BookStatus.COMPLETED && book.getStatus() != BookStatus.OVERDUE;
+    }
+
+    /**
+     * Принудительно записывает накопленные изменения на диск.
+     */
+    public boolean flush() {
+        return writeLocked(this::flushPending);
+    }
+
+    private boolean flushPending() {
+        if (scheduledCommit != null) {
+            scheduledCommit.cancel(false);
+            scheduledCommit = null;
+        }
+        if (image == null || pendingChanges == 0) {
+            return true;
+        }
+        if (!writeBooks(image.values())) {
+            return false;
+        }
+        pendingChanges = 0;
+        if (!options.residentIndex) {
+            image = null;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        writeLocked(() -> {
+            flushPending();
+            if (options.snapshot) {
+                refreshSnapshot();
+            }
+            if (backgroundExecutor != null) {
+                backgroundExecutor.shutdown();
+                backgroundExecutor = null;
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Переписывает журнал в канонический вид: по одной живой записи на id, без надгробий.
+     * Снимок файла разбирается и записывается во временный файл без блокировки DAO, так что
+     * чтение и запись продолжаются; под блокировкой к результату лишь дописываются записи,
+     * появившиеся за время уплотнения, и файл атомарно подменяется.
+     */
+    public void compact() {
+        Path target = Paths.get(csvFile).toAbsolutePath();
+        long snapshotSize;
+        long snapshotRecords;
+        Object snapshotFile;
+        fileLock.lockWrite();
+        try {
+            syncWithFile();
+            snapshotSize = target.toFile().length();
+            snapshotRecords = logRecords;
+            snapshotFile = fileKey(target);
+        } finally {
+            fileLock.unlockWrite();
+        }
+
+        Path temp = null;
+        try {
+            List<Book> live = resolveLog(parallelLoader.loadPrefix(target, snapshotSize));
+            temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+            try (CSVWriter writer = new CSVWriter(Files.newBufferedWriter(temp))) {
+                writer.writeNext(HEADER);
+                for (Book book : live) {
+                    writer.writeNext(bookToRow(book.getId(), book));
+                }
+            }
+
+            fileLock.lockWrite();
+            try {
+                syncWithFile();
+                long currentSize = target.toFile().length();
+                if (currentSize < snapshotSize || !Objects.equals(snapshotFile, fileKey(target))) {
+                    System.err.println("CSV-файл переписан во время уплотнения, уплотнение отменено");
+                    return;
+                }
+                if (currentSize > snapshotSize) {
+                    // Записи, дописанные во время уплотнения, переносим как есть
+                    try (FileChannel source = FileChannel.open(target, StandardOpenOption.READ);
+                         FileChannel destination = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                        long position = snapshotSize;
+                        while (position < currentSize) {
+                            position += source.transferTo(position, currentSize - position, destination);
+                        }
+                    }
+                }
+                moveIntoPlace(temp, target);
+                temp = null;
+                if (offsetIndex != null) {
+                    offsetIndex.rebuild();
+                }
+                if (options.logStructured) {
+                    logRecords = live.size() + (logRecords - snapshotRecords);
+                }
+                rememberFileState();
+            } finally {
+                fileLock.unlockWrite();
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ошибка уплотнения CSV: " + e.getMessage());
+        } finally {
+            fileLock.lockWrite();
+            try {
+                compactionRunning = false;
+            } finally {
+                fileLock.unlockWrite();
+            }
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Источник записей для {@link #replaceContents}: пишет строки в формате этого файла.
+     */
+    interface ContentWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Атомарно заменяет CSV-файл: после заголовка записи пишет {@code body}. Несохраненные
+     * изменения DAO отбрасываются, образ, индекс смещений и статистика журнала строятся
+     * заново по новому файлу.
+     */
+    boolean replaceContents(ContentWriter body) {
+        return writeLocked(() -> {
+            Path target = Paths.get(csvFile).toAbsolutePath();
+            Path temp = null;
+            try {
+                temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16)) {
+                    out.write(encodeRow(HEADER));
+                    body.writeTo(out);
+                }
+                moveIntoPlace(temp, target);
+                temp = null;
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Ошибка замены CSV-файла: " + e.getMessage());
+                return false;
+            } finally {
+                if (temp != null) {
+                    try {
+                        Files.deleteIfExists(temp);
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+
+            if (scheduledCommit != null) {
+                scheduledCommit.cancel(false);
+                scheduledCommit = null;
+            }
+            image = null;
+            pendingChanges = 0;
+            if (options.residentIndex) {
+                reloadImage();
+            }
+            nextId.accumulateAndGet(calculateNextId(), Math::max);
+            if (offsetIndex != null) {
+                offsetIndex.rebuild();
+            }
+            if (options.logStructured) {
+                loadLogStats();
+            }
+            return true;
+        });
+    }
+
     // Вспомогательные методы
 
+    /**
+     * Выполняет изменение под исключительной блокировкой файла. Внешнее действие сначала
+     * подхватывает изменения других процессов и в конце запоминает состояние файла.
+     */
+    private <T> T writeLocked(Supplier<T> action) {
+        boolean outermost = !fileLock.isWriteLockedByCurrentThread();
+        fileLock.lockWrite();
+        try {
+            if (outermost) {
+                syncWithFile();
+            }
+            return action.get();
+        } finally {
+            if (outermost) {
+                rememberFileState();
+            }
+            fileLock.unlockWrite();
+        }
+    }
+
+    /**
+     * Выполняет чтение под общей блокировкой. Резидентный образ, устаревший из-за записи
+     * другого процесса, предварительно перечитывается под исключительной блокировкой.
+     */
+    private <T> T readLocked(Supplier<T> action) {
+        if (options.residentIndex && isFileChanged() && !fileLock.isWriteLockedByCurrentThread()) {
+            writeLocked(() -> null);
+        }
+        fileLock.lockRead();
+        try {
+            return action.get();
+        } finally {
+            fileLock.unlockRead();
+        }
+    }
+
+    /**
+     * Подхватывает изменения файла, сделанные в обход этого DAO с момента его последней записи.
+     */
+    private void syncWithFile() {
+        if (!isFileChanged()) {
+            return;
+        }
+        if (options.residentIndex) {
+            refreshIfChanged();
+            return;
+        }
+        if (image != null && pendingChanges > 0) {
+            System.err.println("CSV-файл изменен извне при наличии незаписанных изменений, они будут сохранены поверх");
+            return;
+        }
+        image = null;
+        nextId.accumulateAndGet(calculateNextId(), Math::max);
+        if (options.logStructured) {
+            loadLogStats();
+        }
+    }
+
+    private boolean isFileChanged() {
+        File file = new File(csvFile);
+        return file.lastModified() != fileModified || file.length() != fileSize;
+    }
+
+    /**
+     * Идентификатор файла в файловой системе (например, inode); меняется при атомарной подмене файла.
+     */
+    private static Object fileKey(Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private long maxImageId() {
+        return image.keySet().stream().mapToLong(Long::longValue).max().orElse(0L);
+    }
+
+    private boolean isDeferredWrite() {
+        return options.isDeferredWrite();
+    }
+
+    /**
+     * Возвращает образ файла для изменения: в режимах групповой фиксации и резидентного
+     * индекса это общий образ в памяти, иначе свежая копия данных с диска.
+     */
+    private boolean useOffsetIndex() {
+        return offsetIndex != null && image == null && !isDeferredWrite();
+    }
+
+    /**
+     * Находит запись через индекс-спутник и читает ее позиционно.
+     */
+    private Optional<Book> findIndexed(Long id) {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            Long offset = offsetIndex.offsetOf(id);
+            if (offset == null) {
+                return Optional.empty();
+            }
+            Book book = readRecordAt(offset);
+            if (book != null && book.getId().equals(id)) {
+                return Optional.of(book);
+            }
+            // Индекс разошелся с файлом — перестраиваем и пробуем еще раз
+            offsetIndex.rebuild();
+        }
+        return Optional.empty();
+    }
+
+    private Book readRecordAt(long offset) {
+        try (FileChannel channel = FileChannel.open(Paths.get(csvFile), StandardOpenOption.READ)) {
+            return decodeSingle(CsvBookDecoder.readRecord(channel, offset));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private Book decodeSingle(ByteBuffer record) {
+        Book[] found = new Book[1];
+        try {
+            decoder.get().decode(record, 0, record.limit(), false, book -> {
+                found[0] = book;
+                return false;
+            });
+        } catch (RuntimeException e) {
+            return null;
+        }
+        return found[0];
+    }
+
+    /**
+     * Перезаписывает запись на месте, если ее новое представление имеет ту же длину в байтах.
+     */
+    private boolean updateInPlace(Book book) {
+        Long offset = offsetIndex.offsetOf(book.getId());
+        if (offset == null) {
+            return false;
+        }
+        ByteBuffer newRecord = ByteBuffer.wrap(encodeRow(bookToRow(book.getId(), book)));
+
+        try (FileChannel channel = FileChannel.open(Paths.get(csvFile), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer oldRecord = CsvBookDecoder.readRecord(channel, offset);
+            Book old = decodeSingle(oldRecord);
+            if (old == null || !old.getId().equals(book.getId()) || oldRecord.limit() != newRecord.limit()) {
+                return false;
+            }
+            long position = offset;
+            while (newRecord.hasRemaining()) {
+                position += channel.write(newRecord, position);
+            }
+        } catch (IOException e) {
+            System.err.println("Ошибка записи в CSV: " + e.getMessage());
+            return false;
+        }
+
+        offsetIndex.recordInPlaceWrite();
+        return true;
+    }
+
+    private byte[] encodeRow(String[] row) {
+        StringWriter buffer = new StringWriter();
+        try (CSVWriter writer = new CSVWriter(buffer)) {
+            writer.writeNext(row);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private Map<Long, Book> image() {
+        if (image != null) {
+            refreshIfChanged();
+            return image;
+        }
+        LinkedHashMap<Long, Book> books = readBooks();
+        if (isDeferredWrite()) {
+            image = books;
+        }
+        return books;
+    }
+
+    private boolean commit(Map<Long, Book> books) {
+        if (!isDeferredWrite()) {
+            return writeBooks(books.values());
+        }
+
+        pendingChanges++;
+        if (pendingChanges >= options.maxPendingChanges) {
+            return flushPending();
+        }
+        if (scheduledCommit == null) {
+            scheduledCommit = backgroundExecutor().schedule(this::flushScheduled,
+                    options.commitWindowMillis, TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    private ScheduledExecutorService backgroundExecutor() {
+        if (backgroundExecutor == null) {
+            backgroundExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "csv-background");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return backgroundExecutor;
+    }
+
+    private boolean useLog() {
+        return options.logStructured && image == null && !isDeferredWrite();
+    }
+
+    private void loadLogStats() {
+        liveIds = new HashSet<>();
+        logRecords = 0;
+        Path path = Paths.get(csvFile);
+        if (!Files.exists(path)) {
+            return;
+        }
+        try {
+            CsvParallelLoader.RecordOffsets scan = parallelLoader.recordOffsets(path);
+            scan.offsets().forEach((id, offset) -> {
+                if (offset != CsvBookDecoder.TOMBSTONE_OFFSET) {
+                    liveIds.add(id);
+                }
+            });
+            logRecords = scan.recordCount();
+        } catch (IOException e) {
+            System.err.println("Ошибка чтения журнала CSV: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Дописывает в журнал замещающую запись или надгробие. Уплотнение запускает вызывающий,
+     * когда {@link #liveIds} уже отражает изменение.
+     */
+    private boolean appendLogRecord(long id, String[] row, boolean tombstone) {
+        long offset = appendRow(row);
+        if (offset < 0) {
+            return false;
+        }
+        if (offsetIndex != null) {
+            offsetIndex.recordAppend(id, tombstone ? CsvOffsetIndex.REMOVED : offset);
+        }
+        logRecords++;
+        return true;
+    }
+
+    private void scheduleCompactionIfNeeded() {
+        long dead = logRecords - liveIds.size();
+        if (!compactionRunning && logRecords >= MIN_COMPACTION_RECORDS
+                && (double) dead / logRecords > options.maxDeadRatio) {
+            compactionRunning = true;
+            backgroundExecutor().execute(this::compact);
+        }
+    }
+
+    /**
+     * Оставляет по одной, последней версии каждой записи и убирает удаленные.
+     */
+    private List<Book> resolveLog(List<Book> records) {
+        boolean canonical = true;
+        long previousId = Long.MIN_VALUE;
+        for (Book book : records) {
+            if (CsvBookDecoder.isTombstone(book) || book.getId() <= previousId) {
+                canonical = false;
+                break;
+            }
+            previousId = book.getId();
+        }
+        if (canonical) {
+            return records;
+        }
+
+        LinkedHashMap<Long, Book> live = new LinkedHashMap<>();
+        for (Book book : records) {
+            if (CsvBookDecoder.isTombstone(book)) {
+                live.remove(book.getId());
+            } else {
+                live.put(book.getId(), book);
+            }
+        }
+        return new ArrayList<>(live.values());
+    }
+
+    private static List<Book> copies(Collection<Book> books) {
+        List<Book> copies = new ArrayList<>(books.size());
+        for (Book book : books) {
+            copies.add(new Book(book));
+        }
+        return copies;
+    }
+
+    /**
+     * Обновляет поисковый индекс и представления резидентного образа после изменения книги.
+     */
+    private void indexResident(Book stored) {
+        if (searchIndex != null) {
+            searchIndex.put(stored);
+            sortedViews.put(stored);
+        }
+    }
+
+    private void unindexResident(Long id) {
+        if (searchIndex != null) {
+            searchIndex.remove(id);
+            sortedViews.remove(id);
+        }
+    }
+
+    private void flushScheduled() {
+        writeLocked(() -> {
+            scheduledCommit = null;
+            if (!flushPending()) {
+                System.err.println("Ошибка отложенной записи в CSV, изменения остаются в памяти");
+            }
+            return null;
+        });
+    }
+
+    private void reloadImage() {
+        image = readBooks();
+        searchIndex.rebuild(image.values());
+        sortedViews.rebuild(image.values());
+        pendingChanges = 0;
+        rememberFileState();
+    }
+
+    /**
+     * Перечитывает резидентный образ, если файл был изменен вне процесса.
+     */
+    private void refreshIfChanged() {
+        if (!options.residentIndex) {
+            return;
+        }
+        File file = new File(csvFile);
+        if (file.lastModified() == fileModified && file.length() == fileSize) {
+            return;
+        }
+        if (pendingChanges > 0) {
+            System.err.println("CSV-файл изменен извне при наличии незаписанных изменений, они будут сохранены поверх");
+            rememberFileState();
+            return;
+        }
+        reloadImage();
+        nextId.accumulateAndGet(maxImageId() + 1, Math::max);
+    }
+
+    private void rememberFileState() {
+        File file = new File(csvFile);
+        fileModified = file.lastModified();
+        fileSize = file.length();
+    }
+
+    private LinkedHashMap<Long, Book> readBooks() {
+        LinkedHashMap<Long, Book> books = new LinkedHashMap<>();
+        for (Book book : loadAllBooks()) {
+            books.put(book.getId(), book);
+        }
+        return books;
+    }
+
+    /**
+     * Разбирает весь файл; большие файлы разбираются параллельно по фрагментам.
+     */
+    private List<Book> loadAllBooks() {
+        Path path = Paths.get(csvFile);
+        if (options.snapshot) {
+            List<Book> books = BookSnapshot.loadIfFresh(path);
+            if (books != null) {
+                return books;
+            }
+            books = parseAllBooks(path);
+            if (snapshotWritten.compareAndSet(false, true) && !writeSnapshot(books)) {
+                // Первый полный разбор за сессию сохраняем для следующего холодного старта
+                snapshotWritten.set(false);
+            }
+            return books;
+        }
+        return parseAllBooks(path);
+    }
+
+    private List<Book> parseAllBooks(Path path) {
+        try {
+            if (isLargeFile(path)) {
+                return resolveLog(parallelLoader.loadAll(path));
+            }
+        } catch (IOException e) {
+            System.err.println("Ошибка параллельного чтения CSV: " + e.getMessage());
+        }
+
+        List<Book> books = new ArrayList<>();
+        scanBooks(books::add);
+        return resolveLog(books);
+    }
+
+    private void refreshSnapshot() {
+        Path path = Paths.get(csvFile);
+        if (!Files.exists(path) || BookSnapshot.freshMaxId(path) >= 0) {
+            return;
+        }
+        writeSnapshot(image != null ? new ArrayList<>(image.values()) : parseAllBooks(path));
+    }
+
+    private boolean writeSnapshot(List<Book> books) {
+        Path path = Paths.get(csvFile);
+        if (!Files.exists(path)) {
+            return false;
+        }
+        long maxId = nextId.get() - 1;
+        for (Book book : books) {
+            maxId = Math.max(maxId, book.getId());
+        }
+        try {
+            BookSnapshot.write(path, books, maxId);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Ошибка записи снимка CSV: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean isLargeFile(Path path) throws IOException {
+        return Files.exists(path) && Files.size(path) >= CsvParallelLoader.PARALLEL_THRESHOLD;
+    }
+
+    /**
+     * Последовательно разбирает файл, передавая книги в {@code sink}, пока он возвращает {@code true}.
+     */
+    private void scanBooks(Predicate<Book> sink) {
+        try {
+            ByteBuffer buffer = CsvBookDecoder.map(Paths.get(csvFile));
+            decoder.get().decode(buffer, 0, buffer.limit(), true, sink);
+            return;
+        } catch (IOException e) {
+            // Не удалось отобразить файл в память — разбираем через OpenCSV
+        }
+
+        List<String[]> allData = readAllData();
+        for (int i = 1; i < allData.size(); i++) {
+            if (!sink.test(convertRowToBook(allData.get(i)))) {
+                return;
+            }
+        }
+    }
+
     private List<String[]> readAllData() {
         try (CSVReader reader = new CSVReader(new FileReader(csvFile))) {
             return reader.readAll();
         } catch (IOException | CsvException e) {
             // Если файл не существует, создаем заголовок
             List<String[]> header = new ArrayList<>();
-            header.add(new String[]{"id", "title", "author", "isbn", "genre", "status",
-                    "added_date", "due_date", "priority", "total_pages", "pages_read"});
+            header.add(HEADER);
             return header;
         }
     }
 
+    private boolean writeBooks(Collection<Book> books) {
+        List<String[]> allData = new ArrayList<>(books.size() + 1);
+        allData.add(HEADER);
+        for (Book book : books) {
+            allData.add(bookToRow(book.getId(), book));
+        }
+        return writeAllData(allData);
+    }
+
     private boolean writeAllData(List<String[]> allData) {
-        try (CSVWriter writer = new CSVWriter(new FileWriter(csvFile))) {
-            writer.writeAll(allData);
+        // Пишем во временный файл рядом с исходным и атомарно подменяем его
+        Path target = Paths.get(csvFile).toAbsolutePath();
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+            try (CSVWriter writer = new CSVWriter(Files.newBufferedWriter(temp))) {
+                writer.writeAll(allData);
+            }
+            moveIntoPlace(temp, target);
+            if (offsetIndex != null) {
+                offsetIndex.rebuild();
+            }
             return true;
         } catch (IOException e) {
             System.err.println("Ошибка записи в CSV: " + e.getMessage());
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                }
+            }
             return false;
         }
     }
 
+    private void moveIntoPlace(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Дописывает строку в конец файла и возвращает смещение ее начала или {@code -1} при ошибке.
+     */
+    private long appendRow(String[] row) {
+        long[] offsets = appendRows(Collections.singletonList(row));
+        return offsets != null ? offsets[0] : -1;
+    }
+
+    /**
+     * Дописывает строки в конец файла одним потоком и возвращает смещения их начал
+     * или {@code null} при ошибке.
+     */
+    private long[] appendRows(List<String[]> rows) {
+        File file = new File(csvFile);
+        boolean needsHeader = !file.exists() || file.length() == 0;
+
+        StringWriter text = new StringWriter();
+        try (CSVWriter encoder = new CSVWriter(text);
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(file, true), 1 << 16)) {
+            long position = file.length();
+            if (needsHeader) {
+                position += writeEncoded(encoder, text, HEADER, out);
+            } else if (!endsWithNewline(file)) {
+                out.write('\n');
+                position++;
+            }
+
+            long[] offsets = new long[rows.size()];
+            for (int i = 0; i < rows.size(); i++) {
+                offsets[i] = position;
+                position += writeEncoded(encoder, text, rows.get(i), out);
+            }
+            return offsets;
+        } catch (IOException e) {
+            System.err.println("Ошибка записи в CSV: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Кодирует строку CSV через общий буфер и пишет ее байты в поток; возвращает их число.
+     */
+    private int writeEncoded(CSVWriter encoder, StringWriter text, String[] row, OutputStream out) throws IOException {
+        text.getBuffer().setLength(0);
+        encoder.writeNext(row);
+        encoder.flush();
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        out.write(bytes);
+        return bytes.length;
+    }
+
+    private boolean endsWithNewline(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(raf.length() - 1);
+            return raf.read() == '\n';
+        }
+    }
+
+    private String[] bookToRow(Long id, Book book) {
+        return new String[]{
+                String.valueOf(id),
+                book.getTitle(),
+                book.getAuthor(),
+                book.getIsbn() != null ? book.getIsbn() : "",
+                book.getGenre() != null ? book.getGenre() : "",
+                book.getStatus().name(),
+                book.getAddedDate().toString(),
+                book.getDueDate() != null ? book.getDueDate().toString() : "",
+                String.valueOf(book.getPriority()),
+                String.valueOf(book.getTotalPages()),
+                String.valueOf(book.getPagesRead())
+        };
+    }
+
     private Book convertRowToBook(String[] row) {
+        if (row.length == 1 && !row[0].isEmpty()) {
+            return CsvBookDecoder.tombstone(Long.parseLong(row[0]));
+        }
         if (row.length < 11) {
             throw new IllegalArgumentException("Неверный формат строки CSV");
         }
@@ -256,6 +1488,7 @@ public class CSVBookDAO implements BookDAO {
         book.setTotalPages(Integer.parseInt(row[9]));
         book.setPagesRead(Integer.parseInt(row[10]));
 
+        book.markClean();
         return book;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,443 @@
+package com.library.dao.impl;
+
+import com.library.dao.BookDAO;
+import com.library.model.Book;
+import com.library.model.BookStatus;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Кэширующая обертка над любым {@link BookDAO}: книги по id и результаты запросов
+ * (фильтры, поиск, сортировки, выборки по сроку, просроченные) хранятся в двух LRU-кэшах
+ * с ограничением размера и временем жизни записи. Потоковые методы идут в хранилище напрямую.
+ * <p>
+ * Изменения через обертку сбрасывают только затронутое: книгу с этим id и те результаты,
+ * которые ее содержат или могут начать содержать после изменения (например, фильтр по новому
+ * статусу). Изменения в обход обертки видны не позже чем через время жизни записи или после
+ * {@link #invalidateAll()}.
+ * <p>
+ * Наружу выдаются копии книг: вызывающий код может менять их, не портя кэш.
+ */
+public class CachingBookDAO implements BookDAO {
+    private final BookDAO delegate;
+    private final Options options;
+
+    // Все поля ниже защищены lock
+    private final Object lock = new Object();
+    private final LinkedHashMap<Long, CachedBook> books = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<QueryKey, CachedQuery> queries = new LinkedHashMap<>(16, 0.75f, true);
+    private long queryRows;
+    // Растет при каждом сбросе; результат загрузки, начатой до сброса, не кэшируется
+    private long generation;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * Настройки кэша. По умолчанию: до 10 000 книг, до 256 результатов запросов суммарно
+     * не больше 100 000 книг, время жизни записи — минута.
+     */
+    public static final class Options {
+        private int maxBooks = 10_000;
+        private int maxQueries = 256;
+        private int maxQueryRows = 100_000;
+        private long ttlMillis = 60_000;
+
+        public static Options defaults() {
+            return new Options();
+        }
+
+        /**
+         * Сколько книг по id хранится одновременно.
+         */
+        public Options maxBooks(int maxBooks) {
+            this.maxBooks = Math.max(0, maxBooks);
+            return this;
+        }
+
+        /**
+         * Сколько результатов запросов хранится и сколько книг в них суммарно. Результат
+         * больше {@code maxRows} не кэшируется.
+         */
+        public Options maxQueries(int maxQueries, int maxRows) {
+            this.maxQueries = Math.max(0, maxQueries);
+            this.maxQueryRows = Math.max(0, maxRows);
+            return this;
+        }
+
+        /**
+         * Время жизни записи с момента загрузки; {@code 0} — без ограничения.
+         */
+        public Options ttl(long ttlMillis) {
+            this.ttlMillis = Math.max(0, ttlMillis);
+            return this;
+        }
+    }
+
+    /**
+     * Счетчики кэша. Вытеснение — удаление по размеру или истечению времени жизни,
+     * сброс — удаление из-за изменения данных.
+     */
+    public record Metrics(long hits, long misses, long evictions, long invalidations,
+                          int cachedBooks, int cachedQueries, long cachedQueryRows) {
+    }
+
+    public CachingBookDAO(BookDAO delegate) {
+        this(delegate, Options.defaults());
+    }
+
+    public CachingBookDAO(BookDAO delegate, Options options) {
+        this.delegate = Objects.requireNonNull(delegate);
+        this.options = options;
+    }
+
+    // CRUD операции
+    @Override
+    public Long addBook(Book book) {
+        Long id = delegate.addBook(book);
+        if (id != null) {
+            invalidate(Collections.singletonList(id), query -> query.mayContain().test(book));
+        }
+        return id;
+    }
+
+    @Override
+    public List<Long> addBooks(Collection<Book> newBooks) {
+        List<Long> ids = delegate.addBooks(newBooks);
+        if (!ids.isEmpty()) {
+            invalidate(ids, query -> newBooks.stream().anyMatch(query.mayContain()));
+        }
+        return ids;
+    }
+
+    @Override
+    public boolean updateBook(Book book) {
+        if (!book.isDirty()) {
+            return delegate.updateBook(book);
+        }
+        // Сбрасываем и при неудаче: отказ по версии значит, что кэшированная книга устарела
+        try {
+            return delegate.updateBook(book);
+        } finally {
+            invalidate(Collections.singletonList(book.getId()), query -> query.mayContain().test(book));
+        }
+    }
+
+    @Override
+    public boolean deleteBook(Long id) {
+        try {
+            return delegate.deleteBook(id);
+        } finally {
+            invalidate(Collections.singletonList(id), query -> false);
+        }
+    }
+
+    @Override
+    public Optional<Book> getBookById(Long id) {
+        long loadGeneration;
+        synchronized (lock) {
+            CachedBook cached = books.get(id);
+            if (cached != null && isExpired(cached.expiresAt())) {
+                books.remove(id);
+                evictions++;
+                cached = null;
+            }
+            if (cached != null) {
+                hits++;
+                return Optional.ofNullable(cached.book()).map(Book::new);
+            }
+            misses++;
+            loadGeneration = generation;
+        }
+
+        Optional<Book> loaded = delegate.getBookById(id);
+        synchronized (lock) {
+            if (loadGeneration == generation && options.maxBooks > 0) {
+                // Отсутствие книги тоже кэшируется: addBook сбрасывает запись по новому id
+                books.put(id, new CachedBook(loaded.map(Book::new).orElse(null), expiresAt()));
+                while (books.size() > options.maxBooks) {
+                    Iterator<Long> eldest = books.keySet().iterator();
+                    eldest.next();
+                    eldest.remove();
+                    evictions++;
+                }
+            }
+        }
+        // Вызывающий получает свою копию, как и при попадании в кэш
+        return loaded.map(Book::new);
+    }
+
+    @Override
+    public List<Book> getAllBooks() {
+        return query(new QueryKey(QueryKind.ALL, null), book -> true, delegate::getAllBooks);
+    }
+
+    // Потоковое чтение
+    @Override
+    public Stream<Book> streamAll() {
+        return delegate.streamAll();
+    }
+
+    @Override
+    public Stream<Book> streamByStatus(BookStatus status) {
+        return delegate.streamByStatus(status);
+    }
+
+    @Override
+    public Stream<Book> streamByGenre(String genre) {
+        return delegate.streamByGenre(genre);
+    }
+
+    // Поиск и фильтрация
+    @Override
+    public List<Book> searchBooks(String keyword) {
+        return query(new QueryKey(QueryKind.SEARCH, keyword), matchesKeyword(keyword),
+                () -> delegate.searchBooks(keyword));
+    }
+
+    @Override
+    public List<Book> filterByStatus(BookStatus status) {
+        return query(new QueryKey(QueryKind.STATUS, status), book -> book.getStatus() == status,
+                () -> delegate.filterByStatus(status));
+    }
+
+    @Override
+    public List<Book> filterByGenre(String genre) {
+        return query(new QueryKey(QueryKind.GENRE, genre),
+                book -> book.getGenre() != null && book.getGenre().equalsIgnoreCase(genre),
+                () -> delegate.filterByGenre(genre));
+    }
+
+    // Сортировка
+    @Override
+    public List<Book> sortByTitle() {
+        return query(new QueryKey(QueryKind.SORT, "title"), book -> true, delegate::sortByTitle);
+    }
+
+    @Override
+    public List<Book> sortByAuthor() {
+        return query(new QueryKey(QueryKind.SORT, "author"), book -> true, delegate::sortByAuthor);
+    }
+
+    @Override
+    public List<Book> sortByDueDate() {
+        return query(new QueryKey(QueryKind.SORT, "dueDate"), book -> true, delegate::sortByDueDate);
+    }
+
+    @Override
+    public List<Book> sortByPriority() {
+        return query(new QueryKey(QueryKind.SORT, "priority"), book -> true, delegate::sortByPriority);
+    }
+
+    @Override
+    public List<Book> getBooksDueBetween(LocalDate from, LocalDate to) {
+        return query(new QueryKey(QueryKind.DUE_BETWEEN, List.of(from, to)),
+                book -> book.getDueDate() != null && !book.getDueDate().isBefore(from) && !book.getDueDate().isAfter(to),
+                () -> delegate.getBooksDueBetween(from, to));
+    }
+
+    // Управление статусами
+    @Override
+    public boolean updateStatus(Long id, BookStatus status) {
+        try {
+            return delegate.updateStatus(id, status);
+        } finally {
+            // Прочие поля не меняются, поэтому книга может появиться только в фильтре
+            // по новому статусу и в списке просроченных
+            invalidate(Collections.singletonList(id), query -> query.key().kind() == QueryKind.OVERDUE
+                    || query.key().equals(new QueryKey(QueryKind.STATUS, status)));
+        }
+    }
+
+    @Override
+    public List<Book> getOverdueBooks() {
+        // Ключ включает дату: со сменой дня список пересчитывается
+        LocalDate today = LocalDate.now();
+        return query(new QueryKey(QueryKind.OVERDUE, today),
+                book -> book.getDueDate() != null && book.getDueDate().isBefore(today)
+                        && book.getStatus() != BookStatus.COMPLETED,
+                delegate::getOverdueBooks);
+    }
+
+    @Override
+    public List<Long> markOverdue(LocalDate today) {
+        List<Long> ids = delegate.markOverdue(today);
+        if (!ids.isEmpty()) {
+            // Отмеченные книги уже входили в список просроченных, а в фильтры — по старому статусу
+            invalidate(ids, query -> query.key().equals(new QueryKey(QueryKind.STATUS, BookStatus.OVERDUE)));
+        }
+        return ids;
+    }
+
+    @Override
+    public List<Long> markOverdue(Collection<Long> ids, LocalDate today) {
+        List<Long> changed = delegate.markOverdue(ids, today);
+        if (!changed.isEmpty()) {
+            invalidate(changed, query -> query.key().equals(new QueryKey(QueryKind.STATUS, BookStatus.OVERDUE)));
+        }
+        return changed;
+    }
+
+    @Override
+    public int maxConcurrency() {
+        return delegate.maxConcurrency();
+    }
+
+    /**
+     * Очищает кэш целиком, например после изменения данных в обход обертки.
+     */
+    public void invalidateAll() {
+        synchronized (lock) {
+            generation++;
+            invalidations += books.size() + queries.size();
+            books.clear();
+            queries.clear();
+            queryRows = 0;
+        }
+    }
+
+    public Metrics metrics() {
+        synchronized (lock) {
+            return new Metrics(hits, misses, evictions, invalidations, books.size(), queries.size(), queryRows);
+        }
+    }
+
+    // Вспомогательные методы
+
+    private List<Book> query(QueryKey key, Predicate<Book> mayContain, Supplier<List<Book>> loader) {
+        long loadGeneration;
+        synchronized (lock) {
+            CachedQuery cached = queries.get(key);
+            if (cached != null && isExpired(cached.expiresAt())) {
+                removeQuery(key);
+                evictions++;
+                cached = null;
+            }
+            if (cached != null) {
+                hits++;
+                return copyOf(cached.books());
+            }
+            misses++;
+            loadGeneration = generation;
+        }
+
+        List<Book> loaded = loader.get();
+        if (loaded.size() > options.maxQueryRows || options.maxQueries == 0) {
+            // Результат не кэшируется, и кэш не держит ссылок на эти книги
+            return loaded;
+        }
+        List<Book> stored = copyOf(loaded);
+        Set<Long> ids = new HashSet<>();
+        for (Book book : stored) {
+            ids.add(book.getId());
+        }
+        synchronized (lock) {
+            if (loadGeneration == generation) {
+                removeQuery(key);
+                queries.put(key, new CachedQuery(key, stored, ids, mayContain, expiresAt()));
+                queryRows += stored.size();
+                while (queries.size() > options.maxQueries || queryRows > options.maxQueryRows) {
+                    Iterator<Map.Entry<QueryKey, CachedQuery>> eldest = queries.entrySet().iterator();
+                    queryRows -= eldest.next().getValue().books().size();
+                    eldest.remove();
+                    evictions++;
+                }
+            }
+        }
+        // Вызывающий получает свои копии, как и при попадании в кэш
+        return copyOf(loaded);
+    }
+
+    /**
+     * Сбрасывает книги с данными id и результаты, которые содержат одну из них
+     * или для которых {@code mayGain} допускает появление измененной книги.
+     */
+    private void invalidate(Collection<Long> ids, Predicate<CachedQuery> mayGain) {
+        synchronized (lock) {
+            generation++;
+            for (Long id : ids) {
+                if (books.remove(id) != null) {
+                    invalidations++;
+                }
+            }
+            Iterator<CachedQuery> iterator = queries.values().iterator();
+            while (iterator.hasNext()) {
+                CachedQuery query = iterator.next();
+                if (mayGain.test(query) || ids.stream().anyMatch(query.ids()::contains)) {
+                    queryRows -= query.books().size();
+                    iterator.remove();
+                    invalidations++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Условие searchBooks хранилищ: подстрока в названии, авторе, ISBN или жанре без учета
+     * регистра. Символы шаблона LIKE делают условие PostgreSQL шире, поэтому такой запрос
+     * считается затронутым любым изменением.
+     */
+    private static Predicate<Book> matchesKeyword(String keyword) {
+        String lowerKeyword = keyword.toLowerCase();
+        if (lowerKeyword.indexOf('%') >= 0 || lowerKeyword.indexOf('_') >= 0 || lowerKeyword.indexOf('\\') >= 0) {
+            return book -> true;
+        }
+        return book -> contains(book.getTitle(), lowerKeyword) || contains(book.getAuthor(), lowerKeyword)
+                || contains(book.getIsbn(), lowerKeyword) || contains(book.getGenre(), lowerKeyword);
+    }
+
+    private static boolean contains(String value, String lowerKeyword) {
+        return value != null && value.toLowerCase().contains(lowerKeyword);
+    }
+
+    private void removeQuery(QueryKey key) {
+        CachedQuery removed = queries.remove(key);
+        if (removed != null) {
+            queryRows -= removed.books().size();
+        }
+    }
+
+    private long expiresAt() {
+        return options.ttlMillis == 0 ? Long.MAX_VALUE : System.currentTimeMillis() + options.ttlMillis;
+    }
+
+    private static boolean isExpired(long expiresAt) {
+        return System.currentTimeMillis() >= expiresAt;
+    }
+
+    private static List<Book> copyOf(List<Book> source) {
+        List<Book> copy = new ArrayList<>(source.size());
+        for (Book book : source) {
+            copy.add(new Book(book));
+        }
+        return copy;
+    }
+
+    private enum QueryKind { ALL, SEARCH, STATUS, GENRE, SORT, DUE_BETWEEN, OVERDUE }
+
+    private record QueryKey(QueryKind kind, Object argument) {
+    }
+
+    // book == null — книги с таким id нет
+    private record CachedBook(Book book, long expiresAt) {
+    }
+
+    private record CachedQuery(QueryKey key, List<Book> books, Set<Long> ids,
+                               Predicate<Book> mayContain, long expiresAt) {
+    }
+}
@@ -0,0 +1,103 @@
+package com.library.dao.impl;
+
+import com.library.model.Book;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Ленивый проход по CSV-файлу: диапазоны между границами записей отображаются в память
+ * по одному и разбираются по мере запроса следующей книги, так что в памяти одновременно
+ * находится только текущая книга. Открытый канал удерживает файл, который был на месте при
+ * открытии курсора, поэтому атомарная подмена файла во время обхода на курсор не влияет.
+ * Надгробия пропускаются; если задано {@code lastOffsets}, пропускаются и устаревшие
+ * версии записей журнала.
+ */
+final class CsvBookCursor implements Iterator<Book>, AutoCloseable {
+    private final FileChannel channel;
+    private final long[] bounds;
+    private final Map<Long, Long> lastOffsets;
+    private final CsvBookDecoder decoder = new CsvBookDecoder();
+    private int chunk = -1;
+    private long chunkStart;
+    private Book nextBook;
+
+    CsvBookCursor(FileChannel channel, long[] bounds, Map<Long, Long> lastOffsets) {
+        this.channel = channel;
+        this.bounds = bounds;
+        this.lastOffsets = lastOffsets;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextBook == null) {
+            nextBook = advance();
+        }
+        return nextBook != null;
+    }
+
+    @Override
+    public Book next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Book book = nextBook;
+        nextBook = null;
+        return book;
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Ошибка закрытия CSV-файла: " + e.getMessage());
+        }
+    }
+
+    private Book advance() {
+        while (true) {
+            Book book = chunk >= 0 ? decoder.next() : null;
+            if (book == null) {
+                if (!openNextChunk()) {
+                    return null;
+                }
+                continue;
+            }
+            if (CsvBookDecoder.isTombstone(book)) {
+                continue;
+            }
+            if (lastOffsets != null) {
+                Long last = lastOffsets.get(book.getId());
+                if (last == null || last != chunkStart + decoder.recordStart()) {
+                    continue; // Более поздняя версия записи ниже по файлу
+                }
+            }
+            return book;
+        }
+    }
+
+    private boolean openNextChunk() {
+        while (++chunk < bounds.length - 1) {
+            long from = bounds[chunk];
+            long to = bounds[chunk + 1];
+            if (to <= from) {
+                continue;
+            }
+            try {
+                ByteBuffer buffer = CsvBookDecoder.map(channel, from, to - from);
+                chunkStart = from;
+                decoder.open(buffer, 0, buffer.limit(), chunk == 0);
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,470 @@
+package com.library.dao.impl;
+
+import com.library.model.Book;
+import com.library.model.BookStatus;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.function.Predicate;
+
+/**
+ * Разбор books.csv прямо из отображенного в память файла: поля читаются из буфера
+ * байтов без промежуточных строк {@code String[]}, числа и даты разбираются по цифрам.
+ * Запись из одного поля с id — надгробие удаленной книги в журнальном режиме; она
+ * передается получателю как книга, у которой заполнен только id (см. {@link #isTombstone}).
+ * Экземпляр не потокобезопасен — у каждого потока разбора должен быть свой декодер.
+ * Декодеры живут в потоках подолгу, поэтому по окончании разбора ссылка на буфер
+ * сбрасывается: иначе отображенный в память файл не освобождался бы до следующего разбора.
+ */
+final class CsvBookDecoder {
+    // Смещение, которым в индексе смещений помечаются надгробия
+    static final long TOMBSTONE_OFFSET = -1;
+    private static final int DATE_CACHE_SIZE = 4096;
+    private static final BookStatus[] STATUSES = BookStatus.values();
+    private static final byte[][] STATUS_NAMES = new byte[STATUSES.length][];
+
+    static {
+        for (BookStatus status : STATUSES) {
+            STATUS_NAMES[status.ordinal()] = status.name().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    // Кэш дат по тексту: ключ yyyyMMdd, прямое отображение без упаковки ключей
+    private final int[] dateKeys = new int[DATE_CACHE_SIZE];
+    private final LocalDate[] dateValues = new LocalDate[DATE_CACHE_SIZE];
+
+    // Переиспользуемый буфер для текста поля
+    private byte[] scratch = new byte[256];
+    private int scratchLength;
+
+    private ByteBuffer buf;
+    private int pos;
+    private int end;
+    private int recordStart;
+
+    /**
+     * Отображает файл в память целиком. Пустой или отсутствующий файл дает пустой буфер.
+     */
+    static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return map(channel, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            return ByteBuffer.allocate(0);
+        }
+    }
+
+    static ByteBuffer map(FileChannel channel, long offset, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Слишком большой фрагмент для отображения в память: " + length);
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+
+    static boolean isTombstone(Book book) {
+        return book.getStatus() == null;
+    }
+
+    static Book tombstone(long id) {
+        Book book = new Book();
+        book.setId(id);
+        return book;
+    }
+
+    /**
+     * Разбирает записи в диапазоне {@code [from, to)} и передает книги в {@code sink};
+     * разбор прекращается, если {@code sink} вернул {@code false}.
+     * При {@code skipHeader} первая запись диапазона считается заголовком.
+     */
+    void decode(ByteBuffer buffer, int from, int to, boolean skipHeader, Predicate<Book> sink) {
+        open(buffer, from, to, skipHeader);
+        try {
+            Book book;
+            while ((book = next()) != null) {
+                if (!sink.test(book)) {
+                    return;
+                }
+            }
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Начинает поштучный разбор диапазона {@code [from, to)} через {@link #next()}.
+     */
+    void open(ByteBuffer buffer, int from, int to, boolean skipHeader) {
+        this.buf = buffer;
+        this.pos = from;
+        this.end = to;
+
+        if (skipHeader) {
+            skipBom();
+            skipRecord();
+        }
+    }
+
+    /**
+     * Разбирает следующую запись открытого диапазона или возвращает {@code null}, если записи
+     * кончились; в этом случае буфер диапазона отпускается.
+     */
+    Book next() {
+        while (pos < end) {
+            if (atLineEnd()) {
+                skipLineEnd();
+                continue;
+            }
+            recordStart = pos;
+            return decodeRecord();
+        }
+        release();
+        return null;
+    }
+
+    /**
+     * Позиция в буфере, с которой началась запись, возвращенная последним {@link #next()}.
+     */
+    int recordStart() {
+        return recordStart;
+    }
+
+    /**
+     * Находит максимальный id в диапазоне, разбирая только первое поле каждой записи.
+     */
+    long maxId(ByteBuffer buffer, int from, int to, boolean skipHeader) {
+        this.buf = buffer;
+        this.pos = from;
+        this.end = to;
+
+        if (skipHeader) {
+            skipBom();
+            skipRecord();
+        }
+
+        try {
+            long max = 0;
+            while (pos < end) {
+                if (atLineEnd()) {
+                    skipLineEnd();
+                    continue;
+                }
+                max = Math.max(max, readLong());
+                skipRecord();
+            }
+            return max;
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Передает в {@code sink} id и смещение начала каждой записи в диапазоне;
+     * {@code base} — смещение начала буфера в файле.
+     */
+    void scanOffsets(ByteBuffer buffer, int from, int to, boolean skipHeader, long base, OffsetSink sink) {
+        this.buf = buffer;
+        this.pos = from;
+        this.end = to;
+
+        if (skipHeader) {
+            skipBom();
+            skipRecord();
+        }
+
+        try {
+            while (pos < end) {
+                if (atLineEnd()) {
+                    skipLineEnd();
+                    continue;
+                }
+                long offset = base + pos;
+                long id = readLong();
+                sink.accept(id, atRecordEnd() ? TOMBSTONE_OFFSET : offset);
+                skipRecord();
+            }
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Позиционно читает одну запись, начинающуюся со смещения {@code offset}.
+     * Возвращенный буфер содержит запись вместе с переводом строки (если он есть).
+     */
+    static ByteBuffer readRecord(FileChannel channel, long offset) throws IOException {
+        int capacity = 512;
+        while (true) {
+            ByteBuffer buffer = ByteBuffer.allocate(capacity);
+            int read = 0;
+            while (buffer.hasRemaining()) {
+                int n = channel.read(buffer, offset + read);
+                if (n < 0) {
+                    break;
+                }
+                read += n;
+            }
+
+            boolean quoted = false;
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (b == '"') {
+                    quoted = !quoted;
+                } else if (b == '\n' && !quoted) {
+                    return buffer.limit(i + 1);
+                }
+            }
+            if (read < capacity) {
+                return buffer.limit(read);
+            }
+            capacity *= 2;
+        }
+    }
+
+    /**
+     * Получатель пар (id, смещение записи).
+     */
+    interface OffsetSink {
+        void accept(long id, long offset);
+    }
+
+    private Book decodeRecord() {
+        long id = readLong();
+        if (atRecordEnd()) {
+            skipRecord();
+            return tombstone(id);
+        }
+
+        Book book = new Book();
+        book.setId(id);
+        expectSeparator();
+        book.setTitle(readString());
+        expectSeparator();
+        book.setAuthor(readString());
+        expectSeparator();
+        book.setIsbn(readOptionalString());
+        expectSeparator();
+        book.setGenre(readOptionalString());
+        expectSeparator();
+        book.setStatus(readStatus());
+        expectSeparator();
+        book.setAddedDate(readDate());
+        expectSeparator();
+        book.setDueDate(readDate());
+        expectSeparator();
+        book.setPriority(readInt());
+        expectSeparator();
+        book.setTotalPages(readInt());
+        expectSeparator();
+        book.setPagesRead(readInt());
+
+        // Лишние поля в конце записи игнорируются, как и раньше
+        skipRecord();
+        book.markClean();
+        return book;
+    }
+
+    private void release() {
+        buf = null;
+        pos = 0;
+        end = 0;
+    }
+
+    private void expectSeparator() {
+        if (pos >= end || buf.get(pos) != ',') {
+            throw new IllegalArgumentException("Неверный формат строки CSV");
+        }
+        pos++;
+    }
+
+    /**
+     * Считывает поле в {@code scratch}, снимая кавычки и экранирование.
+     */
+    private void readField() {
+        scratchLength = 0;
+        if (pos < end && buf.get(pos) == '"') {
+            pos++;
+            while (pos < end) {
+                byte b = buf.get(pos++);
+                if (b == '"') {
+                    if (pos < end && buf.get(pos) == '"') {
+                        append(b);
+                        pos++;
+                    } else {
+                        break;
+                    }
+                } else {
+                    append(b);
+                }
+            }
+        }
+        // Остаток поля без кавычек (или все поле, если оно не в кавычках)
+        while (pos < end) {
+            byte b = buf.get(pos);
+            if (b == ',' || b == '\n' || b == '\r') {
+                break;
+            }
+            append(b);
+            pos++;
+        }
+    }
+
+    private void append(byte b) {
+        if (scratchLength == scratch.length) {
+            byte[] grown = new byte[scratch.length * 2];
+            System.arraycopy(scratch, 0, grown, 0, scratchLength);
+            scratch = grown;
+        }
+        scratch[scratchLength++] = b;
+    }
+
+    private String readString() {
+        readField();
+        return new String(scratch, 0, scratchLength, StandardCharsets.UTF_8);
+    }
+
+    private String readOptionalString() {
+        readField();
+        return scratchLength == 0 ? null : new String(scratch, 0, scratchLength, StandardCharsets.UTF_8);
+    }
+
+    private long readLong() {
+        readField();
+        if (scratchLength == 0) {
+            throw new NumberFormatException("Пустое числовое поле в CSV");
+        }
+        int i = 0;
+        boolean negative = scratch[0] == '-';
+        if (negative) {
+            i++;
+        }
+        long value = 0;
+        for (; i < scratchLength; i++) {
+            int digit = scratch[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Неверное число в CSV: " + scratchText());
+            }
+            if (value > (Long.MAX_VALUE - digit) / 10) {
+                throw new NumberFormatException("Слишком большое число в CSV: " + scratchText());
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Как {@link Integer#parseInt}: число вне диапазона int — ошибка формата, а не усечение.
+     */
+    private int readInt() {
+        long value = readLong();
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Число вне диапазона int в CSV: " + value);
+        }
+        return (int) value;
+    }
+
+    private BookStatus readStatus() {
+        readField();
+        for (BookStatus status : STATUSES) {
+            byte[] name = STATUS_NAMES[status.ordinal()];
+            if (name.length == scratchLength && matchesScratch(name)) {
+                return status;
+            }
+        }
+        return BookStatus.valueOf(scratchText());
+    }
+
+    private boolean matchesScratch(byte[] name) {
+        for (int i = 0; i < name.length; i++) {
+            if (scratch[i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private LocalDate readDate() {
+        readField();
+        if (scratchLength == 0) {
+            return null;
+        }
+        if (scratchLength != 10 || scratch[4] != '-' || scratch[7] != '-') {
+            return LocalDate.parse(scratchText());
+        }
+
+        int year = digits(0, 4);
+        int month = digits(5, 7);
+        int day = digits(8, 10);
+        if (year < 0 || month < 0 || day < 0) {
+            return LocalDate.parse(scratchText());
+        }
+
+        int key = year * 10000 + month * 100 + day;
+        int slot = (key ^ (key >>> 12)) & (DATE_CACHE_SIZE - 1);
+        LocalDate cached = dateValues[slot];
+        if (cached != null && dateKeys[slot] == key) {
+            return cached;
+        }
+        LocalDate date = LocalDate.of(year, month, day);
+        dateKeys[slot] = key;
+        dateValues[slot] = date;
+        return date;
+    }
+
+    private int digits(int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = scratch[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private String scratchText() {
+        return new String(scratch, 0, scratchLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Пропускает остаток текущей записи с учетом переводов строк внутри кавычек.
+     */
+    private void skipRecord() {
+        boolean quoted = false;
+        while (pos < end) {
+            byte b = buf.get(pos++);
+            if (b == '"') {
+                quoted = !quoted;
+            } else if (b == '\n' && !quoted) {
+                return;
+            }
+        }
+    }
+
+    private boolean atRecordEnd() {
+        return pos >= end || atLineEnd();
+    }
+
+    private boolean atLineEnd() {
+        byte b = buf.get(pos);
+        return b == '\n' || b == '\r';
+    }
+
+    private void skipLineEnd() {
+        while (pos < end && atLineEnd()) {
+            pos++;
+        }
+    }
+
+    private void skipBom() {
+        if (end - pos >= 3 && buf.get(pos) == (byte) 0xEF && buf.get(pos + 1) == (byte) 0xBB
+                && buf.get(pos + 2) == (byte) 0xBF) {
+            pos += 3;
+        }
+    }
+}
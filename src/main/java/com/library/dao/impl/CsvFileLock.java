@@ -0,0 +1,109 @@
+package com.library.dao.impl;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Блокировка CSV-файла на чтение и запись. Внутри процесса это {@link ReentrantReadWriteLock},
+ * общий для всех DAO, работающих с одним файлом; между процессами — блокировки
+ * {@link FileChannel} на файле-спутнике {@code <файл>.lock}: разделяемая, пока в процессе есть
+ * читатели, и исключительная на время записи.
+ */
+final class CsvFileLock {
+    private static final Map<Path, CsvFileLock> LOCKS = new ConcurrentHashMap<>();
+
+    private final Path lockPath;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private FileChannel channel;
+    private FileLock sharedLock;
+    private int sharedHolders;
+    private FileLock exclusiveLock;
+
+    private CsvFileLock(Path csvPath) {
+        this.lockPath = csvPath.resolveSibling(csvPath.getFileName() + ".lock");
+    }
+
+    static CsvFileLock forFile(Path csvPath) {
+        return LOCKS.computeIfAbsent(csvPath.toAbsolutePath().normalize(), CsvFileLock::new);
+    }
+
+    void lockRead() {
+        lock.readLock().lock();
+        if (lock.isWriteLockedByCurrentThread()) {
+            return; // Исключительная блокировка файла уже у этого потока
+        }
+        synchronized (this) {
+            if (sharedHolders++ == 0) {
+                sharedLock = acquire(true);
+            }
+        }
+    }
+
+    void unlockRead() {
+        if (!lock.isWriteLockedByCurrentThread()) {
+            synchronized (this) {
+                if (--sharedHolders == 0) {
+                    release(sharedLock);
+                    sharedLock = null;
+                }
+            }
+        }
+        lock.readLock().unlock();
+    }
+
+    void lockWrite() {
+        lock.writeLock().lock();
+        if (lock.getWriteHoldCount() == 1) {
+            // Читателей в процессе нет, разделяемая блокировка файла уже снята
+            exclusiveLock = acquire(false);
+        }
+    }
+
+    void unlockWrite() {
+        if (lock.getWriteHoldCount() == 1) {
+            release(exclusiveLock);
+            exclusiveLock = null;
+        }
+        lock.writeLock().unlock();
+    }
+
+    boolean isWriteLockedByCurrentThread() {
+        return lock.isWriteLockedByCurrentThread();
+    }
+
+    // Вспомогательные методы
+
+    /**
+     * Берет блокировку файла-спутника, ожидая другие процессы. Если файл блокировки
+     * недоступен, работа продолжается только с блокировкой внутри процесса.
+     */
+    private synchronized FileLock acquire(boolean shared) {
+        try {
+            if (channel == null || !channel.isOpen()) {
+                channel = FileChannel.open(lockPath, StandardOpenOption.CREATE,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            return channel.lock(0, Long.MAX_VALUE, shared);
+        } catch (IOException e) {
+            System.err.println("Не удалось заблокировать CSV-файл: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void release(FileLock fileLock) {
+        if (fileLock == null) {
+            return;
+        }
+        try {
+            fileLock.release();
+        } catch (IOException e) {
+            System.err.println("Не удалось снять блокировку CSV-файла: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.library.dao.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Индекс-спутник {@code books.csv.idx}: отображение id записи в смещение ее начала в CSV-файле.
+ * Файл индекса состоит из заголовка (сигнатура, размер и время изменения CSV, по которым
+ * индекс был построен) и дописываемых пар (id, смещение); более поздняя пара перекрывает
+ * предыдущую, смещение {@code -1} означает удаленную запись. Методы синхронизированы:
+ * читатели CSV обращаются к индексу параллельно.
+ */
+final class CsvOffsetIndex {
+    private static final int MAGIC = 0x42494458; // "BIDX"
+    private static final int VERSION = 1;
+    private static final long STAMP_POSITION = 8;
+    static final long REMOVED = CsvBookDecoder.TOMBSTONE_OFFSET;
+
+    private final Path csvPath;
+    private final Path indexPath;
+    private final CsvParallelLoader parallelLoader;
+    private final Map<Long, Long> offsets = new HashMap<>();
+    private long csvSize = -1;
+    private long csvModified = -1;
+
+    CsvOffsetIndex(Path csvPath, CsvParallelLoader parallelLoader) {
+        this.csvPath = csvPath;
+        this.indexPath = csvPath.resolveSibling(csvPath.getFileName() + ".idx");
+        this.parallelLoader = parallelLoader;
+        if (!load()) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Смещение записи с данным id или {@code null}, если записи нет.
+     * Устаревший индекс (CSV изменен в обход него) перед поиском перестраивается.
+     */
+    synchronized Long offsetOf(long id) {
+        ensureFresh();
+        Long offset = offsets.get(id);
+        return offset == null || offset == REMOVED ? null : offset;
+    }
+
+    /**
+     * Учитывает запись, дописанную в конец CSV-файла по смещению {@code offset}
+     * ({@link #REMOVED} для надгробия).
+     */
+    synchronized void recordAppend(long id, long offset) {
+        offsets.put(id, offset);
+        appendEntries(ByteBuffer.allocate(16).putLong(id).putLong(offset).flip());
+    }
+
+    /**
+     * Учитывает записи, дописанные в конец CSV-файла одной операцией; {@code offsets[i]}
+     * соответствует {@code ids.get(i)}.
+     */
+    synchronized void recordAppends(List<Long> ids, long[] appendOffsets) {
+        ByteBuffer entries = ByteBuffer.allocate(16 * ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            offsets.put(ids.get(i), appendOffsets[i]);
+            entries.putLong(ids.get(i)).putLong(appendOffsets[i]);
+        }
+        appendEntries(entries.flip());
+    }
+
+    /**
+     * Учитывает запись, измененную на месте без сдвига остальных записей.
+     */
+    synchronized void recordInPlaceWrite() {
+        writeStamp();
+    }
+
+    /**
+     * Полностью перестраивает индекс по текущему содержимому CSV-файла.
+     */
+    synchronized void rebuild() {
+        offsets.clear();
+        try {
+            if (Files.exists(csvPath)) {
+                offsets.putAll(parallelLoader.recordOffsets(csvPath).offsets());
+            }
+            writeIndex();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ошибка построения индекса CSV: " + e.getMessage());
+            offsets.clear();
+            csvSize = -1;
+            csvModified = -1;
+        }
+    }
+
+    synchronized void ensureFresh() {
+        if (csvSize != currentCsvSize() || csvModified != currentCsvModified()) {
+            rebuild();
+        }
+    }
+
+    // Вспомогательные методы
+
+    private boolean load() {
+        if (!Files.exists(indexPath)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return false;
+            }
+            long size = in.readLong();
+            long modified = in.readLong();
+            if (size != currentCsvSize() || modified != currentCsvModified()) {
+                return false;
+            }
+
+            while (true) {
+                long id;
+                long offset;
+                try {
+                    id = in.readLong();
+                    offset = in.readLong();
+                } catch (EOFException e) {
+                    break; // Оборванная последняя пара игнорируется
+                }
+                offsets.put(id, offset);
+            }
+            csvSize = size;
+            csvModified = modified;
+            return true;
+        } catch (IOException e) {
+            offsets.clear();
+            return false;
+        }
+    }
+
+    private void writeIndex() throws IOException {
+        csvSize = currentCsvSize();
+        csvModified = currentCsvModified();
+
+        Path temp = Files.createTempFile(indexPath.toAbsolutePath().getParent(), indexPath.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(csvSize);
+            out.writeLong(csvModified);
+            for (Map.Entry<Long, Long> entry : offsets.entrySet()) {
+                out.writeLong(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+        }
+        try {
+            Files.move(temp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, indexPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void appendEntries(ByteBuffer entries) {
+        try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.WRITE)) {
+            long position = channel.size();
+            while (entries.hasRemaining()) {
+                position += channel.write(entries, position);
+            }
+            writeStamp(channel);
+        } catch (IOException e) {
+            System.err.println("Ошибка обновления индекса CSV: " + e.getMessage());
+            csvSize = -1; // При следующем обращении индекс будет перестроен
+        }
+    }
+
+    private void writeStamp() {
+        try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.WRITE)) {
+            writeStamp(channel);
+        } catch (IOException e) {
+            System.err.println("Ошибка обновления индекса CSV: " + e.getMessage());
+            csvSize = -1;
+        }
+    }
+
+    private void writeStamp(FileChannel channel) throws IOException {
+        csvSize = currentCsvSize();
+        csvModified = currentCsvModified();
+        ByteBuffer stamp = ByteBuffer.allocate(16).putLong(csvSize).putLong(csvModified).flip();
+        channel.write(stamp, STAMP_POSITION);
+    }
+
+    private long currentCsvSize() {
+        return csvPath.toFile().length();
+    }
+
+    private long currentCsvModified() {
+        return csvPath.toFile().lastModified();
+    }
+}
@@ -0,0 +1,252 @@
+package com.library.dao.impl;
+
+import com.library.model.Book;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Параллельный разбор больших CSV-файлов: файл делится на диапазоны байтов,
+ * выровненные по границам записей (с учетом переводов строк внутри кавычек),
+ * диапазоны разбираются одновременно в {@link ForkJoinPool} и сливаются в порядке id.
+ */
+final class CsvParallelLoader {
+    // Файлы меньше порога быстрее разобрать последовательно
+    static final long PARALLEL_THRESHOLD = 16L * 1024 * 1024;
+    private static final long MAX_CHUNK_SIZE = 256L * 1024 * 1024;
+
+    private final ForkJoinPool pool;
+
+    CsvParallelLoader() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    CsvParallelLoader(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Разбирает все записи файла и возвращает их упорядоченными по id;
+     * записи с одинаковым id (включая надгробия) остаются в порядке файла.
+     */
+    List<Book> loadAll(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return loadAll(channel, channel.size());
+        }
+    }
+
+    /**
+     * То же, что {@link #loadAll(Path)}, но только для первых {@code limit} байтов файла.
+     */
+    List<Book> loadPrefix(Path file, long limit) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return loadAll(channel, Math.min(limit, channel.size()));
+        }
+    }
+
+    private List<Book> loadAll(FileChannel channel, long size) throws IOException {
+        long[] bounds = recordBoundaries(channel, size);
+
+        List<Callable<List<Book>>> tasks = new ArrayList<>();
+        for (int i = 0; i < bounds.length - 1; i++) {
+            long from = bounds[i];
+            long to = bounds[i + 1];
+            boolean first = i == 0;
+            tasks.add(() -> {
+                List<Book> books = new ArrayList<>();
+                if (to > from) {
+                    ByteBuffer buffer = CsvBookDecoder.map(channel, from, to - from);
+                    new CsvBookDecoder().decode(buffer, 0, buffer.limit(), first, books::add);
+                }
+                return books;
+            });
+        }
+
+        List<Book> result = new ArrayList<>();
+        for (List<Book> chunk : invokeAll(tasks)) {
+            result.addAll(chunk);
+        }
+        result.sort(Comparator.comparing(Book::getId));
+        return result;
+    }
+
+    /**
+     * Параллельно находит максимальный id, разбирая только первое поле записей.
+     */
+    long maxId(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long[] bounds = recordBoundaries(channel, channel.size());
+
+            List<Callable<Long>> tasks = new ArrayList<>();
+            for (int i = 0; i < bounds.length - 1; i++) {
+                long from = bounds[i];
+                long to = bounds[i + 1];
+                boolean first = i == 0;
+                tasks.add(() -> {
+                    if (to <= from) {
+                        return 0L;
+                    }
+                    ByteBuffer buffer = CsvBookDecoder.map(channel, from, to - from);
+                    return new CsvBookDecoder().maxId(buffer, 0, buffer.limit(), first);
+                });
+            }
+
+            long max = 0;
+            for (Long chunkMax : invokeAll(tasks)) {
+                max = Math.max(max, chunkMax);
+            }
+            return max;
+        }
+    }
+
+    /**
+     * Строит отображение id в смещение начала записи в файле и считает записи;
+     * большие файлы сканируются параллельно. При повторяющихся id побеждает запись,
+     * расположенная дальше в файле, надгробия получают смещение {@link CsvBookDecoder#TOMBSTONE_OFFSET}.
+     */
+    RecordOffsets recordOffsets(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long[] bounds = size >= PARALLEL_THRESHOLD ? recordBoundaries(channel, size) : new long[]{0, size};
+
+            List<Callable<RecordOffsets>> tasks = new ArrayList<>();
+            for (int i = 0; i < bounds.length - 1; i++) {
+                long from = bounds[i];
+                long to = bounds[i + 1];
+                boolean first = i == 0;
+                tasks.add(() -> {
+                    Map<Long, Long> offsets = new HashMap<>();
+                    long[] count = new long[1];
+                    if (to > from) {
+                        ByteBuffer buffer = CsvBookDecoder.map(channel, from, to - from);
+                        new CsvBookDecoder().scanOffsets(buffer, 0, buffer.limit(), first, from, (id, offset) -> {
+                            offsets.put(id, offset);
+                            count[0]++;
+                        });
+                    }
+                    return new RecordOffsets(offsets, count[0]);
+                });
+            }
+
+            Map<Long, Long> offsets = new HashMap<>();
+            long recordCount = 0;
+            for (RecordOffsets chunk : invokeAll(tasks)) {
+                offsets.putAll(chunk.offsets());
+                recordCount += chunk.recordCount();
+            }
+            return new RecordOffsets(offsets, recordCount);
+        }
+    }
+
+    /**
+     * Смещения последних версий записей и общее число записей в файле.
+     */
+    record RecordOffsets(Map<Long, Long> offsets, long recordCount) {
+    }
+
+    /**
+     * Делит файл на диапазоны и сдвигает каждую границу на начало ближайшей записи.
+     * Четность числа кавычек до начала диапазона показывает, находится ли его начало
+     * внутри поля в кавычках; подсчет кавычек по диапазонам тоже идет параллельно.
+     */
+    long[] recordBoundaries(FileChannel channel, long size) throws IOException {
+        int chunks = (int) Math.max(pool.getParallelism() * 4L, (size + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+        chunks = (int) Math.max(1, Math.min(chunks, size / 4096 + 1));
+        long step = (size + chunks - 1) / chunks;
+
+        long[] rawStarts = new long[chunks + 1];
+        for (int i = 0; i <= chunks; i++) {
+            rawStarts[i] = Math.min(size, i * step);
+        }
+
+        List<Callable<Long>> counting = new ArrayList<>();
+        for (int i = 0; i < chunks; i++) {
+            long from = rawStarts[i];
+            long to = rawStarts[i + 1];
+            counting.add(() -> countQuotes(CsvBookDecoder.map(channel, from, to - from)));
+        }
+        List<Long> quoteCounts = invokeAll(counting);
+
+        boolean[] quotedAtStart = new boolean[chunks];
+        long quotes = 0;
+        for (int i = 0; i < chunks; i++) {
+            quotedAtStart[i] = (quotes & 1) == 1;
+            quotes += quoteCounts.get(i);
+        }
+
+        List<Callable<Long>> aligning = new ArrayList<>();
+        for (int i = 1; i < chunks; i++) {
+            long from = rawStarts[i];
+            long to = rawStarts[i + 1];
+            boolean quoted = quotedAtStart[i];
+            aligning.add(() -> firstRecordStart(CsvBookDecoder.map(channel, from, to - from), quoted, from));
+        }
+        List<Long> candidates = invokeAll(aligning);
+
+        long[] bounds = new long[chunks + 1];
+        bounds[0] = 0;
+        bounds[chunks] = size;
+        for (int i = chunks - 1; i >= 1; i--) {
+            long candidate = candidates.get(i - 1);
+            // В диапазоне не началось ни одной записи — он целиком достается предыдущему
+            bounds[i] = candidate >= 0 ? candidate : bounds[i + 1];
+        }
+        return bounds;
+    }
+
+    private static long countQuotes(ByteBuffer buffer) {
+        long count = 0;
+        for (int i = 0; i < buffer.limit(); i++) {
+            if (buffer.get(i) == '"') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static long firstRecordStart(ByteBuffer buffer, boolean quoted, long offset) {
+        for (int i = 0; i < buffer.limit(); i++) {
+            byte b = buffer.get(i);
+            if (b == '"') {
+                quoted = !quoted;
+            } else if (b == '\n' && !quoted) {
+                return offset + i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) throws IOException {
+        List<T> results = new ArrayList<>(tasks.size());
+        for (Future<T> future : pool.invokeAll(tasks)) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Разбор CSV прерван", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException ioException) {
+                    throw ioException;
+                }
+                if (cause instanceof RuntimeException runtime) {
+                    throw runtime;
+                }
+                throw new IOException("Ошибка параллельного разбора CSV", cause);
+            }
+        }
+        return results;
+    }
+}
@@ -6,11 +6,29 @@ import com.library.model.BookStatus;
 
 import java.time.LocalDate;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+/**
+ * Хранилище в памяти (эмуляция Google Sheets). Книги лежат в карте по id, а для фильтров
+ * поддерживаются вторичные индексы: по статусу и по жанру без учета регистра, а также
+ * отсортированные представления {@link SortedBookViews} для sortBy* и выборок по сроку возврата;
+ * searchBooks отвечает по инвертированному индексу {@link BookSearchIndex}.
+ * Индексы обновляются в addBook, updateBook, deleteBook, updateStatus и markOverdue;
+ * изменения выданных книг без updateBook в индексы не попадают.
+ * Не потокобезопасно.
+ */
 public class GoogleSheetsBookDAO implements BookDAO {
     private final String spreadsheetId;
-    private final List<Book> books = new ArrayList<>();
+    // Порядок вставки совпадает с порядком id
+    private final Map<Long, Book> books = new LinkedHashMap<>();
+    // Корзины индексов упорядочены по id, как и полный список
+    private final Map<BookStatus, NavigableMap<Long, Book>> byStatus = new EnumMap<>(BookStatus.class);
+    private final Map<String, NavigableMap<Long, Book>> byGenre = new HashMap<>();
+    // Отсортированные представления; представление по сроку служит и индексом сроков
+    private final SortedBookViews sortedViews = new SortedBookViews();
+    // Ключи, под которыми книга лежит в индексах: выданный объект могут изменить до updateBook
+    private final Map<Long, IndexKeys> indexedKeys = new HashMap<>();
+    private final BookSearchIndex searchIndex = new BookSearchIndex();
     private Long nextId = 1L;
 
     public GoogleSheetsBookDAO(String spreadsheetId) {
@@ -21,110 +39,262 @@ public class GoogleSheetsBookDAO implements BookDAO {
     @Override
     public Long addBook(Book book) {
         book.setId(nextId++);
-        books.add(book);
+        book.setVersion(0L);
+        book.markClean();
+        store(book);
         return book.getId();
     }
 
+    @Override
+    public List<Long> addBooks(Collection<Book> newBooks) {
+        List<Long> ids = new ArrayList<>(newBooks.size());
+        for (Book book : newBooks) {
+            ids.add(addBook(book));
+        }
+        return ids;
+    }
+
     @Override
     public boolean updateBook(Book book) {
-        for (int i = 0; i < books.size(); i++) {
-            if (books.get(i).getId().equals(book.getId())) {
-                books.set(i, book);
-                return true;
-            }
+        Book stored = books.get(book.getId());
+        if (stored == null) {
+            return false;
+        }
+        if (!book.isDirty()) {
+            return true; // Изменений с момента загрузки нет — записывать нечего
         }
-        return false;
+        if (book.getVersion() != null && !book.getVersion().equals(stored.getVersion())) {
+            System.err.println("Книга " + book.getId() + " изменена другим пользователем (версия "
+                    + stored.getVersion() + ", ожидалась " + book.getVersion() + ")");
+            return false;
+        }
+        book.setVersion(stored.getVersion());
+        markSaved(book);
+        unindex(book.getId());
+        store(book);
+        return true;
     }
 
     @Override
     public boolean deleteBook(Long id) {
-        return books.removeIf(book -> book.getId().equals(id));
+        if (books.remove(id) == null) {
+            return false;
+        }
+        unindex(id);
+        searchIndex.remove(id);
+        return true;
     }
 
     @Override
     public Optional<Book> getBookById(Long id) {
-        return books.stream()
-                .filter(book -> book.getId().equals(id))
-                .findFirst();
+        return Optional.ofNullable(books.get(id));
     }
 
     @Override
     public List<Book> getAllBooks() {
-        return new ArrayList<>(books);
+        return new ArrayList<>(books.values());
+    }
+
+    @Override
+    public Stream<Book> streamAll() {
+        return getAllBooks().stream();
+    }
+
+    @Override
+    public Stream<Book> streamByStatus(BookStatus status) {
+        return filterByStatus(status).stream();
+    }
+
+    @Override
+    public Stream<Book> streamByGenre(String genre) {
+        return filterByGenre(genre).stream();
     }
 
     @Override
     public List<Book> searchBooks(String keyword) {
-        String lowerKeyword = keyword.toLowerCase();
-        return getAllBooks().stream()
-                .filter(book -> book.getTitle().toLowerCase().contains(lowerKeyword) ||
-                        book.getAuthor().toLowerCase().contains(lowerKeyword) ||
-                        (book.getIsbn() != null && book.getIsbn().toLowerCase().contains(lowerKeyword)) ||
-                        (book.getGenre() != null && book.getGenre().toLowerCase().contains(lowerKeyword)))
-                .collect(Collectors.toList());
+        List<Long> ids = searchIndex.search(keyword);
+        List<Book> found = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            found.add(books.get(id));
+        }
+        return found;
     }
 
     @Override
     public List<Book> filterByStatus(BookStatus status) {
-        return getAllBooks().stream()
-                .filter(book -> book.getStatus() == status)
-                .collect(Collectors.toList());
+        NavigableMap<Long, Book> bucket = status == null ? null : byStatus.get(status);
+        return bucket == null ? new ArrayList<>() : new ArrayList<>(bucket.values());
     }
 
     @Override
     public List<Book> filterByGenre(String genre) {
-        return getAllBooks().stream()
-                .filter(book -> book.getGenre() != null && book.getGenre().equalsIgnoreCase(genre))
-                .collect(Collectors.toList());
+        NavigableMap<Long, Book> bucket = genre == null ? null : byGenre.get(foldCase(genre));
+        return bucket == null ? new ArrayList<>() : new ArrayList<>(bucket.values());
     }
 
     @Override
     public List<Book> sortByTitle() {
-        return getAllBooks().stream()
-                .sorted(Comparator.comparing(com.library.model.Book::getTitle))
-                .collect(Collectors.toList());
+        return new ArrayList<>(sortedViews.byTitle());
     }
 
     @Override
     public List<Book> sortByAuthor() {
-        return getAllBooks().stream()
-                .sorted(Comparator.comparing(com.library.model.Book::getAuthor))
-                .collect(Collectors.toList());
+        return new ArrayList<>(sortedViews.byAuthor());
     }
 
     @Override
     public List<Book> sortByDueDate() {
-        return getAllBooks().stream()
-                .sorted(Comparator.comparing(book ->
-                        book.getDueDate() != null ? book.getDueDate() : LocalDate.MAX))
-                .collect(Collectors.toList());
+        return new ArrayList<>(sortedViews.byDueDate());
+    }
+
+    @Override
+    public List<Book> getBooksDueBetween(LocalDate from, LocalDate to) {
+        return new ArrayList<>(sortedViews.dueBetween(from, to));
     }
 
     @Override
     public List<Book> sortByPriority() {
-        return getAllBooks().stream()
-                .sorted(Comparator.comparing(com.library.model.Book::getPriority).reversed())
-                .collect(Collectors.toList());
+        return new ArrayList<>(sortedViews.byPriority());
     }
 
     @Override
     public boolean updateStatus(Long id, BookStatus status) {
-        Optional<Book> bookOpt = getBookById(id);
-        if (bookOpt.isPresent()) {
-            Book book = bookOpt.get();
-            book.setStatus(status);
-            return updateBook(book);
+        Book book = books.get(id);
+        if (book == null) {
+            return false;
         }
-        return false;
+        if (book.getStatus() == status) {
+            return true;
+        }
+        book.setStatus(status);
+        markSaved(book);
+        unindex(id);
+        store(book);
+        return true;
     }
 
     @Override
     public List<Book> getOverdueBooks() {
-        LocalDate today = LocalDate.now();
-        return getAllBooks().stream()
-                .filter(book -> book.getDueDate() != null &&
-                        book.getDueDate().isBefore(today) &&
-                        book.getStatus() != com.library.model.BookStatus.COMPLETED)
-                .collect(Collectors.toList());
+        // Просматриваются только книги со сроком раньше сегодняшнего
+        List<Book> overdue = new ArrayList<>();
+        for (Book book : sortedViews.dueBefore(LocalDate.now())) {
+            if (book.getStatus() != BookStatus.COMPLETED) {
+                overdue.add(book);
+            }
+        }
+        overdue.sort(Comparator.comparing(Book::getId));
+        return overdue;
+    }
+
+    @Override
+    public List<Long> markOverdue(LocalDate today) {
+        List<Book> candidates = new ArrayList<>();
+        for (Book book : sortedViews.dueBefore(today)) {
+            if (isNewlyOverdue(book, today)) {
+                candidates.add(book);
+            }
+        }
+        List<Long> ids = new ArrayList<>(candidates.size());
+        for (Book book : candidates) {
+            setOverdue(book);
+            ids.add(book.getId());
+        }
+        ids.sort(null);
+        return ids;
+    }
+
+    @Override
+    public List<Long> markOverdue(Collection<Long> ids, LocalDate today) {
+        List<Long> changed = new ArrayList<>();
+        for (Long id : ids) {
+            Book book = books.get(id);
+            if (book != null && isNewlyOverdue(book, today)) {
+                setOverdue(book);
+                changed.add(id);
+            }
+        }
+        return changed;
+    }
+
+    private void setOverdue(Book book) {
+        book.setStatus(BookStatus.OVERDUE);
+        markSaved(book);
+        unindex(book.getId());
+        store(book);
+    }
+
+    /**
+     * Увеличивает версию измененной книги и снимает отметки изменений.
+     */
+    private void markSaved(Book book) {
+        book.setVersion(book.getVersion() == null ? 1 : book.getVersion() + 1);
+        book.markClean();
+    }
+
+    private boolean isNewlyOverdue(Book book, LocalDate today) {
+        return book.getDueDate() != null && book.getDueDate().isBefore(today)
+                && book.getStatus() != BookStatus.COMPLETED && book.getStatus() != BookStatus.OVERDUE;
+    }
+
+    /**
+     * Кладет книгу в карту по id, во вторичные индексы, представления и поисковый индекс
+     * по ее текущим полям.
+     */
+    private void store(Book book) {
+        Long id = book.getId();
+        books.put(id, book);
+        IndexKeys keys = new IndexKeys(book.getStatus(),
+                book.getGenre() == null ? null : foldCase(book.getGenre()));
+        indexedKeys.put(id, keys);
+        if (keys.status() != null) {
+            byStatus.computeIfAbsent(keys.status(), status -> new TreeMap<>()).put(id, book);
+        }
+        if (keys.genre() != null) {
+            byGenre.computeIfAbsent(keys.genre(), genre -> new TreeMap<>()).put(id, book);
+        }
+        sortedViews.put(book);
+        searchIndex.put(book);
+    }
+
+    /**
+     * Убирает книгу из вторичных индексов по ключам, под которыми она была сохранена,
+     * и из представлений.
+     */
+    private void unindex(Long id) {
+        IndexKeys keys = indexedKeys.remove(id);
+        if (keys == null) {
+            return;
+        }
+        if (keys.status() != null) {
+            removeFromBucket(byStatus, keys.status(), id);
+        }
+        if (keys.genre() != null) {
+            removeFromBucket(byGenre, keys.genre(), id);
+        }
+        sortedViews.remove(id);
+    }
+
+    private static <K> void removeFromBucket(Map<K, NavigableMap<Long, Book>> index, K key, Long id) {
+        NavigableMap<Long, Book> bucket = index.get(key);
+        if (bucket != null) {
+            bucket.remove(id);
+            if (bucket.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Ключ жанра, равный для строк, совпадающих по {@link String#equalsIgnoreCase}.
+     */
+    private static String foldCase(String value) {
+        StringBuilder folded = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            folded.append(Character.toLowerCase(Character.toUpperCase(value.charAt(i))));
+        }
+        return folded.toString();
+    }
+
+    private record IndexKeys(BookStatus status, String genre) {
     }
 }
\ No newline at end of file
@@ -8,64 +8,60 @@ import com.library.util.DatabaseConnection;
 import java.sql.*;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class PostgresBookDAO implements BookDAO {
-    private final Connection connection;
+    private static final String INSERT_COLUMNS =
+            "INSERT INTO books (title, author, isbn, genre, status, added_date, due_date, priority, total_pages, pages_read)";
+    private static final int INSERT_PARAMETERS = 10;
+    // 1000 строк x 10 параметров — далеко от предела протокола в 32767 параметров
+    private static final int INSERT_CHUNK_SIZE = 1000;
+    private static final int STREAM_FETCH_SIZE = 1000;
+    // Порядок столбцов совпадает с позициями, по которым читает resultSetToBook
+    private static final String BOOK_COLUMNS =
+            "id, title, author, isbn, genre, status, added_date, due_date, priority, total_pages, pages_read, version";
+    static final String SELECT_BOOKS = "SELECT " + BOOK_COLUMNS + " FROM books";
+
+    // Порядки сортировки совпадают с выражениями индексов, поэтому запросы читают индекс
+    // по порядку, а не сортируют таблицу; id в конце делает порядок однозначным для постраничной выборки
+    private static final String TITLE_ORDER = "LOWER(title), id";
+    private static final String AUTHOR_ORDER = "LOWER(author), id";
+    private static final String DUE_DATE_ORDER = "COALESCE(due_date, 'infinity'::date), id";
+    private static final String PRIORITY_ORDER = "priority DESC, id DESC";
+
+    // Частые фильтры; каждый читает свой индекс из SchemaMigrator, что проверяет PostgresIndexTest
+    static final String FILTER_BY_STATUS_SQL = SELECT_BOOKS + " WHERE status = ?";
+    static final String FILTER_BY_GENRE_SQL = SELECT_BOOKS + " WHERE LOWER(genre) = LOWER(?)";
+    static final String OVERDUE_SQL = SELECT_BOOKS + " WHERE due_date < CURRENT_DATE AND status != 'COMPLETED'";
+    // Статусы вписаны в текст, а не переданы параметрами: только так условие запроса доказуемо
+    // входит в условие частичного индекса и при общем плане подготовленного запроса
+    static final String MARK_OVERDUE_SQL = "UPDATE books SET status = 'OVERDUE', version = version + 1 "
+            + "WHERE due_date < ? AND status NOT IN ('COMPLETED', 'OVERDUE') RETURNING id";
 
     public PostgresBookDAO() {
-        this.connection = DatabaseConnection.getConnection();
-        createTableIfNotExists();
-    }
-
-    private void createTableIfNotExists() {
-        String sql = """
-            CREATE TABLE IF NOT EXISTS books (
-                id SERIAL PRIMARY KEY,
-                title VARCHAR(255) NOT NULL,
-                author VARCHAR(255) NOT NULL,
-                isbn VARCHAR(20),
-                genre VARCHAR(100),
-                status VARCHAR(20) NOT NULL,
-                added_date DATE DEFAULT CURRENT_DATE,
-                due_date DATE,
-                priority INTEGER DEFAULT 1,
-                total_pages INTEGER,
-                pages_read INTEGER DEFAULT 0
-            )
-            """;
-
-        try (Statement stmt = connection.createStatement()) {
-            stmt.execute(sql);
-            System.out.println("Таблица books создана или уже существует");
-        } catch (SQLException e) {
-            System.err.println("Ошибка создания таблицы: " + e.getMessage());
-        }
+        SchemaMigrator.migrate();
     }
 
     @Override
     public Long addBook(Book book) {
-        String sql = """
-            INSERT INTO books (title, author, isbn, genre, status, added_date, due_date, priority, total_pages, pages_read)
-            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) RETURNING id
-            """;
+        String sql = INSERT_COLUMNS + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) RETURNING id";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, book.getTitle());
-            stmt.setString(2, book.getAuthor());
-            stmt.setString(3, book.getIsbn());
-            stmt.setString(4, book.getGenre());
-            stmt.setString(5, book.getStatus().name());
-            stmt.setDate(6, Date.valueOf(book.getAddedDate()));
-            stmt.setDate(7, book.getDueDate() != null ? Date.valueOf(book.getDueDate()) : null);
-            stmt.setInt(8, book.getPriority());
-            stmt.setInt(9, book.getTotalPages());
-            stmt.setInt(10, book.getPagesRead());
-
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                return rs.getLong(1);
+        try (Connection connection = DatabaseConnection.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+            bindInsert(stmt, 0, book);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getLong(1);
+                }
             }
         } catch (SQLException e) {
             System.err.println("Ошибка добавления книги: " + e.getMessage());
@@ -73,27 +69,134 @@ public class PostgresBookDAO implements BookDAO {
         return null;
     }
 
+    /**
+     * Добавляет книги многострочными INSERT ... VALUES (...), (...) RETURNING id пачками
+     * по {@value #INSERT_CHUNK_SIZE} строк в одной транзакции: один запрос к серверу на пачку,
+     * а не на книгу. При ошибке транзакция откатывается и возвращается пустой список.
+     */
+    @Override
+    public List<Long> addBooks(Collection<Book> books) {
+        List<Book> pending = new ArrayList<>(books);
+        List<Long> ids = new ArrayList<>(pending.size());
+        if (pending.isEmpty()) {
+            return ids;
+        }
+
+        try (Connection connection = DatabaseConnection.getConnection()) {
+            connection.setAutoCommit(false);
+            int chunkSize = Math.min(INSERT_CHUNK_SIZE, pending.size());
+            try (PreparedStatement fullChunk = connection.prepareStatement(multiRowInsertSql(chunkSize))) {
+                for (int from = 0; from < pending.size(); from += chunkSize) {
+                    List<Book> chunk = pending.subList(from, Math.min(from + chunkSize, pending.size()));
+                    if (chunk.size() == chunkSize) {
+                        ids.addAll(insertChunk(fullChunk, chunk));
+                    } else {
+                        try (PreparedStatement tail = connection.prepareStatement(multiRowInsertSql(chunk.size()))) {
+                            ids.addAll(insertChunk(tail, chunk));
+                        }
+                    }
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            System.err.println("Ошибка пакетного добавления книг: " + e.getMessage());
+            return new ArrayList<>();
+        }
+        return ids;
+    }
+
+    private String multiRowInsertSql(int rows) {
+        StringBuilder sql = new StringBuilder(INSERT_COLUMNS).append(" VALUES ");
+        String placeholders = "(" + "?, ".repeat(INSERT_PARAMETERS - 1) + "?)";
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(placeholders);
+        }
+        return sql.append(" RETURNING id").toString();
+    }
+
+    private List<Long> insertChunk(PreparedStatement stmt, List<Book> chunk) throws SQLException {
+        for (int i = 0; i < chunk.size(); i++) {
+            bindInsert(stmt, i * INSERT_PARAMETERS, chunk.get(i));
+        }
+
+        List<Long> ids = new ArrayList<>(chunk.size());
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                ids.add(rs.getLong(1));
+            }
+        }
+        // Значения последовательности выдаются строкам VALUES по порядку, а порядок строк
+        // RETURNING не гарантирован — упорядоченные id соответствуют порядку книг
+        ids.sort(null);
+        return ids;
+    }
+
+    private void bindInsert(PreparedStatement stmt, int offset, Book book) throws SQLException {
+        stmt.setString(offset + 1, book.getTitle());
+        stmt.setString(offset + 2, book.getAuthor());
+        stmt.setString(offset + 3, book.getIsbn());
+        stmt.setString(offset + 4, book.getGenre());
+        stmt.setString(offset + 5, book.getStatus().name());
+        stmt.setDate(offset + 6, Date.valueOf(book.getAddedDate()));
+        stmt.setDate(offset + 7, book.getDueDate() != null ? Date.valueOf(book.getDueDate()) : null);
+        stmt.setInt(offset + 8, book.getPriority());
+        stmt.setInt(offset + 9, book.getTotalPages());
+        stmt.setInt(offset + 10, book.getPagesRead());
+    }
+
+    /**
+     * Записывает только поля, измененные с момента загрузки книги; книга без изменений не
+     * записывается. Если версия книги известна, строка обновляется только при совпадении
+     * версии — иначе ее уже изменил кто-то другой, и метод возвращает {@code false}.
+     */
     @Override
     public boolean updateBook(Book book) {
-        String sql = """
-            UPDATE books SET title=?, author=?, isbn=?, genre=?, status=?, due_date=?, 
-            priority=?, total_pages=?, pages_read=? WHERE id=?
-            """;
+        Set<Book.Field> changed = book.getDirtyFields();
+        if (changed.isEmpty()) {
+            // Изменений с момента загрузки нет — записывать нечего, но книга должна существовать
+            return bookExists(book.getId());
+        }
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, book.getTitle());
-            stmt.setString(2, book.getAuthor());
-            stmt.setString(3, book.getIsbn());
-            stmt.setString(4, book.getGenre());
-            stmt.setString(5, book.getStatus().name());
-            stmt.setDate(6, book.getDueDate() != null ? Date.valueOf(book.getDueDate()) : null);
-            stmt.setInt(7, book.getPriority());
-            stmt.setInt(8, book.getTotalPages());
-            stmt.setInt(9, book.getPagesRead());
-            stmt.setLong(10, book.getId());
+        // Поля перечисляются в порядке enum, так что один набор изменений дает один текст запроса
+        StringBuilder sql = new StringBuilder("UPDATE books SET ");
+        for (Book.Field field : changed) {
+            sql.append(column(field)).append(" = ?, ");
+        }
+        sql.append("version = version + 1 WHERE id = ?");
+        if (book.getVersion() != null) {
+            sql.append(" AND version = ?");
+        }
+        sql.append(" RETURNING version");
 
-            int rowsAffected = stmt.executeUpdate();
-            return rowsAffected > 0;
+        try (Connection connection = DatabaseConnection.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql.toString())) {
+            int index = 1;
+            for (Book.Field field : changed) {
+                bindField(stmt, index++, book, field);
+            }
+            stmt.setLong(index++, book.getId());
+            if (book.getVersion() != null) {
+                stmt.setLong(index, book.getVersion());
+            }
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    book.setVersion(rs.getLong(1));
+                    book.markClean();
+                    return true;
+                }
+            }
+            if (book.getVersion() != null) {
+                System.err.println("Книга " + book.getId() + " не найдена или изменена другим пользователем (ожидалась версия "
+                        + book.getVersion() + ")");
+            }
+            return false;
         } catch (SQLException e) {
             System.err.println("Ошибка обновления книги: " + e.getMessage());
             return false;
@@ -104,7 +207,8 @@ public class PostgresBookDAO implements BookDAO {
     public boolean deleteBook(Long id) {
         String sql = "DELETE FROM books WHERE id = ?";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection connection = DatabaseConnection.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
             stmt.setLong(1, id);
             int rowsAffected = stmt.executeUpdate();
             return rowsAffected > 0;
@@ -116,14 +220,15 @@ public class PostgresBookDAO implements BookDAO {
 
     @Override
     public Optional<Book> getBookById(Long id) {
-        String sql = "SELECT * FROM books WHERE id = ?";
+        String sql = SELECT_BOOKS + " WHERE id = ?";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection connection = DatabaseConnection.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
             stmt.setLong(1, id);
-            ResultSet rs = stmt.executeQuery();
-
-            if (rs.next()) {
-                return Optional.of(resultSetToBook(rs));
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return Optional.of(resultSetToBook(rs));
+                }
             }
         } catch (SQLException e) {
             System.err.println("Ошибка получения книги по ID: " + e.getMessage());
@@ -134,10 +239,11 @@ public class PostgresBookDAO implements BookDAO {
     @Override
     public List<Book> getAllBooks() {
         List<Book> books = new ArrayList<>();
-        String sql = "SELECT * FROM books";
+        String sql = SELECT_BOOKS;
 
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+        try (Connection connection = DatabaseConnection.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
 
             while (rs.next()) {
                 books.add(resultSetToBook(rs));
@@ -148,27 +254,97 @@ public class PostgresBookDAO implements BookDAO {
         return books;
     }
 
+    @Override
+    public Stream<Book> streamAll() {
+        return streamBooks(SELECT_BOOKS, stmt -> { }, "Ошибка потокового чтения книг");
+    }
+
+    @Override
+    public Stream<Book> streamByStatus(BookStatus status) {
+        return streamBooks(FILTER_BY_STATUS_SQL, stmt -> stmt.setString(1, status.name()),
+                "Ошибка потоковой фильтрации по статусу");
+    }
+
+    @Override
+    public Stream<Book> streamByGenre(String genre) {
+        return streamBooks(FILTER_BY_GENRE_SQL, stmt -> stmt.setString(1, genre),
+                "Ошибка потоковой фильтрации по жанру");
+    }
+
+    /**
+     * Читает результат курсором по {@value #STREAM_FETCH_SIZE} строк. Курсор на сервере
+     * работает только внутри транзакции — в режиме автофиксации драйвер загрузил бы
+     * весь результат в память. Соединение возвращается в пул при закрытии потока.
+     */
+    private Stream<Book> streamBooks(String sql, StatementBinder binder, String errorMessage) {
+        Connection connection = null;
+        PreparedStatement stmt = null;
+        ResultSet rs;
+        try {
+            connection = DatabaseConnection.getConnection();
+            connection.setAutoCommit(false);
+            stmt = connection.prepareStatement(sql);
+            stmt.setFetchSize(STREAM_FETCH_SIZE);
+            binder.bind(stmt);
+            rs = stmt.executeQuery();
+        } catch (SQLException e) {
+            System.err.println(errorMessage + ": " + e.getMessage());
+            closeQuietly(stmt, connection);
+            return Stream.empty();
+        }
+
+        ResultSet cursor = rs;
+        AutoCloseable[] resources = {rs, stmt, connection};
+        Spliterator<Book> rows = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Book> action) {
+                try {
+                    if (!cursor.next()) {
+                        return false;
+                    }
+                    action.accept(resultSetToBook(cursor));
+                    return true;
+                } catch (SQLException e) {
+                    System.err.println(errorMessage + ": " + e.getMessage());
+                    return false;
+                }
+            }
+        };
+        return StreamSupport.stream(rows, false).onClose(() -> closeQuietly(resources));
+    }
+
+    private void closeQuietly(AutoCloseable... resources) {
+        for (AutoCloseable resource : resources) {
+            if (resource == null) {
+                continue;
+            }
+            try {
+                resource.close();
+            } catch (Exception e) {
+                System.err.println("Ошибка закрытия курсора: " + e.getMessage());
+            }
+        }
+    }
+
     @Override
     public List<Book> searchBooks(String keyword) {
         List<Book> books = new ArrayList<>();
-        String sql = """
-            SELECT * FROM books WHERE 
-            LOWER(title) LIKE LOWER(?) OR 
-            LOWER(author) LIKE LOWER(?) OR 
-            LOWER(isbn) LIKE LOWER(?) OR 
-            LOWER(genre) LIKE LOWER(?)
-            """;
+        // ILIKE по столбцам использует триграммные индексы, LOWER(...) LIKE — нет
+        String sql = SELECT_BOOKS + " WHERE title ILIKE ? OR author ILIKE ? OR isbn ILIKE ? OR genre ILIKE ?";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection connection = DatabaseConnection.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
             String searchPattern = "%" + keyword + "%";
             stmt.setString(1, searchPattern);
             stmt.setString(2, searchPattern);
             stmt.setString(3, searchPattern);
             stmt.setString(4, searchPattern);
 
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                books.add(resultSetToBook(rs));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    books.add(resultSetToBook(rs));
+                }
             }
         } catch (SQLException e) {
             System.err.println("Ошибка поиска книг: " + e.getMessage());
@@ -176,17 +352,41 @@ public class PostgresBookDAO implements BookDAO {
         return books;
     }
 
+    /**
+     * Поиск с ранжированием по релевантности: полнотекстовое совпадение по столбцу
+     * search_vector (русская и английская морфология, веса: название, автор, жанр, ISBN)
+     * или нечеткое триграммное сходство с названием или автором, устойчивое к опечаткам.
+     * Возвращает не более {@code limit} самых релевантных книг.
+     */
+    public List<Book> searchRanked(String query, int limit) {
+        String sql = SELECT_BOOKS + "\n" + """
+            WHERE search_vector @@ (websearch_to_tsquery('russian', ?) || websearch_to_tsquery('english', ?))
+               OR title % ? OR author % ?
+            ORDER BY ts_rank(search_vector, websearch_to_tsquery('russian', ?) || websearch_to_tsquery('english', ?))
+                     + GREATEST(similarity(title, ?), similarity(author, ?)) DESC, id
+            LIMIT ?
+            """;
+
+        return queryBooks(sql, stmt -> {
+            for (int i = 1; i <= 8; i++) {
+                stmt.setString(i, query);
+            }
+            stmt.setInt(9, limit);
+        }, "Ошибка поиска с ранжированием");
+    }
+
     @Override
     public List<Book> filterByStatus(BookStatus status) {
         List<Book> books = new ArrayList<>();
-        String sql = "SELECT * FROM books WHERE status = ?";
+        String sql = FILTER_BY_STATUS_SQL;
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection connection = DatabaseConnection.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
             stmt.setString(1, status.name());
-            ResultSet rs = stmt.executeQuery();
-
-            while (rs.next()) {
-                books.add(resultSetToBook(rs));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    books.add(resultSetToBook(rs));
+                }
             }
         } catch (SQLException e) {
             System.err.println("Ошибка фильтрации по статусу: " + e.getMessage());
@@ -197,14 +397,15 @@ public class PostgresBookDAO implements BookDAO {
     @Override
     public List<Book> filterByGenre(String genre) {
         List<Book> books = new ArrayList<>();
-        String sql = "SELECT * FROM books WHERE LOWER(genre) = LOWER(?)";
+        String sql = FILTER_BY_GENRE_SQL;
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection connection = DatabaseConnection.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
             stmt.setString(1, genre);
-            ResultSet rs = stmt.executeQuery();
-
-            while (rs.next()) {
-                books.add(resultSetToBook(rs));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    books.add(resultSetToBook(rs));
+                }
             }
         } catch (SQLException e) {
             System.err.println("Ошибка фильтрации по жанру: " + e.getMessage());
@@ -214,41 +415,125 @@ public class PostgresBookDAO implements BookDAO {
 
     @Override
     public List<Book> sortByTitle() {
-        List<Book> books = getAllBooks();
-        books.sort((b1, b2) -> b1.getTitle().compareToIgnoreCase(b2.getTitle()));
-        return books;
+        return queryBooks(SELECT_BOOKS + " ORDER BY " + TITLE_ORDER, stmt -> { },
+                "Ошибка сортировки по названию");
     }
 
     @Override
     public List<Book> sortByAuthor() {
-        List<Book> books = getAllBooks();
-        books.sort((b1, b2) -> b1.getAuthor().compareToIgnoreCase(b2.getAuthor()));
-        return books;
+        return queryBooks(SELECT_BOOKS + " ORDER BY " + AUTHOR_ORDER, stmt -> { },
+                "Ошибка сортировки по автору");
     }
 
     @Override
     public List<Book> sortByDueDate() {
-        List<Book> books = getAllBooks();
-        books.sort((b1, b2) -> {
-            LocalDate date1 = b1.getDueDate() != null ? b1.getDueDate() : LocalDate.MAX;
-            LocalDate date2 = b2.getDueDate() != null ? b2.getDueDate() : LocalDate.MAX;
-            return date1.compareTo(date2);
-        });
-        return books;
+        return queryBooks(SELECT_BOOKS + " ORDER BY " + DUE_DATE_ORDER, stmt -> { },
+                "Ошибка сортировки по сроку");
     }
 
     @Override
     public List<Book> sortByPriority() {
-        List<Book> books = getAllBooks();
-        books.sort((b1, b2) -> Integer.compare(b2.getPriority(), b1.getPriority()));
+        return queryBooks(SELECT_BOOKS + " ORDER BY " + PRIORITY_ORDER, stmt -> { },
+                "Ошибка сортировки по приоритету");
+    }
+
+    @Override
+    public List<Book> getBooksDueBetween(LocalDate from, LocalDate to) {
+        // Условие на то же выражение, что в индексе сортировки по сроку: выборка — срез индекса.
+        // Книги без срока получают 'infinity' и в диапазон не попадают
+        return queryBooks(SELECT_BOOKS + " WHERE COALESCE(due_date, 'infinity'::date) BETWEEN ? AND ? ORDER BY "
+                        + DUE_DATE_ORDER,
+                stmt -> {
+                    stmt.setDate(1, Date.valueOf(from));
+                    stmt.setDate(2, Date.valueOf(to));
+                },
+                "Ошибка выборки книг по сроку");
+    }
+
+    // Постраничная выборка по ключу (keyset): следующая страница начинается сразу после
+    // последней книги предыдущей страницы, after == null дает первую страницу.
+    // Стоимость запроса не зависит от номера страницы, в отличие от OFFSET.
+
+    public List<Book> pageByTitle(Book after, int pageSize) {
+        if (after == null) {
+            return firstPage(TITLE_ORDER, pageSize);
+        }
+        return queryBooks(SELECT_BOOKS + " WHERE (LOWER(title), id) > (LOWER(?), ?) ORDER BY "
+                + TITLE_ORDER + " LIMIT ?", stmt -> {
+            stmt.setString(1, after.getTitle());
+            stmt.setLong(2, after.getId());
+            stmt.setInt(3, pageSize);
+        }, "Ошибка постраничной выборки по названию");
+    }
+
+    public List<Book> pageByAuthor(Book after, int pageSize) {
+        if (after == null) {
+            return firstPage(AUTHOR_ORDER, pageSize);
+        }
+        return queryBooks(SELECT_BOOKS + " WHERE (LOWER(author), id) > (LOWER(?), ?) ORDER BY "
+                + AUTHOR_ORDER + " LIMIT ?", stmt -> {
+            stmt.setString(1, after.getAuthor());
+            stmt.setLong(2, after.getId());
+            stmt.setInt(3, pageSize);
+        }, "Ошибка постраничной выборки по автору");
+    }
+
+    public List<Book> pageByDueDate(Book after, int pageSize) {
+        if (after == null) {
+            return firstPage(DUE_DATE_ORDER, pageSize);
+        }
+        return queryBooks(SELECT_BOOKS + " WHERE (COALESCE(due_date, 'infinity'::date), id) > "
+                + "(COALESCE(?::date, 'infinity'::date), ?) ORDER BY " + DUE_DATE_ORDER + " LIMIT ?", stmt -> {
+            stmt.setDate(1, after.getDueDate() != null ? Date.valueOf(after.getDueDate()) : null);
+            stmt.setLong(2, after.getId());
+            stmt.setInt(3, pageSize);
+        }, "Ошибка постраничной выборки по сроку");
+    }
+
+    public List<Book> pageByPriority(Book after, int pageSize) {
+        if (after == null) {
+            return firstPage(PRIORITY_ORDER, pageSize);
+        }
+        return queryBooks(SELECT_BOOKS + " WHERE (priority, id) < (?, ?) ORDER BY "
+                + PRIORITY_ORDER + " LIMIT ?", stmt -> {
+            stmt.setInt(1, after.getPriority());
+            stmt.setLong(2, after.getId());
+            stmt.setInt(3, pageSize);
+        }, "Ошибка постраничной выборки по приоритету");
+    }
+
+    private List<Book> firstPage(String order, int pageSize) {
+        return queryBooks(SELECT_BOOKS + " ORDER BY " + order + " LIMIT ?",
+                stmt -> stmt.setInt(1, pageSize), "Ошибка постраничной выборки");
+    }
+
+    private List<Book> queryBooks(String sql, StatementBinder binder, String errorMessage) {
+        List<Book> books = new ArrayList<>();
+
+        try (Connection connection = DatabaseConnection.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+            binder.bind(stmt);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    books.add(resultSetToBook(rs));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println(errorMessage + ": " + e.getMessage());
+        }
         return books;
     }
 
+    private interface StatementBinder {
+        void bind(PreparedStatement stmt) throws SQLException;
+    }
+
     @Override
     public boolean updateStatus(Long id, BookStatus status) {
-        String sql = "UPDATE books SET status = ? WHERE id = ?";
+        String sql = "UPDATE books SET status = ?, version = version + 1 WHERE id = ?";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection connection = DatabaseConnection.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
             stmt.setString(1, status.name());
             stmt.setLong(2, id);
             int rowsAffected = stmt.executeUpdate();
@@ -262,10 +547,11 @@ public class PostgresBookDAO implements BookDAO {
     @Override
     public List<Book> getOverdueBooks() {
         List<Book> books = new ArrayList<>();
-        String sql = "SELECT * FROM books WHERE due_date < CURRENT_DATE AND status != 'COMPLETED'";
+        String sql = OVERDUE_SQL;
 
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+        try (Connection connection = DatabaseConnection.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
 
             while (rs.next()) {
                 books.add(resultSetToBook(rs));
@@ -276,22 +562,123 @@ public class PostgresBookDAO implements BookDAO {
         return books;
     }
 
-    private Book resultSetToBook(ResultSet rs) throws SQLException {
+    @Override
+    public int maxConcurrency() {
+        // Больше параллельных операций, чем соединений в пуле, только ждали бы соединения
+        return DatabaseConnection.getPool().maxSize();
+    }
+
+    @Override
+    public List<Long> markOverdue(LocalDate today) {
+        List<Long> ids = new ArrayList<>();
+        String sql = MARK_OVERDUE_SQL;
+
+        try (Connection connection = DatabaseConnection.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setDate(1, Date.valueOf(today));
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getLong(1));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Ошибка отметки просроченных книг: " + e.getMessage());
+        }
+        return ids;
+    }
+
+    @Override
+    public List<Long> markOverdue(Collection<Long> ids, LocalDate today) {
+        List<Long> changed = new ArrayList<>();
+        if (ids.isEmpty()) {
+            return changed;
+        }
+        // Строки находятся по первичному ключу; условие повторяет проверку markOverdue,
+        // так что книга, завершенная после постановки в очередь, не меняется
+        String sql = "UPDATE books SET status = 'OVERDUE', version = version + 1 "
+                + "WHERE id = ANY(?) AND due_date < ? AND status NOT IN ('COMPLETED', 'OVERDUE') RETURNING id";
+
+        try (Connection connection = DatabaseConnection.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setArray(1, connection.createArrayOf("bigint", ids.toArray()));
+            stmt.setDate(2, Date.valueOf(today));
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    changed.add(rs.getLong(1));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Ошибка отметки просроченных книг: " + e.getMessage());
+        }
+        return changed;
+    }
+
+    private static String column(Book.Field field) {
+        return switch (field) {
+            case TITLE -> "title";
+            case AUTHOR -> "author";
+            case ISBN -> "isbn";
+            case GENRE -> "genre";
+            case STATUS -> "status";
+            case ADDED_DATE -> "added_date";
+            case DUE_DATE -> "due_date";
+            case PRIORITY -> "priority";
+            case TOTAL_PAGES -> "total_pages";
+            case PAGES_READ -> "pages_read";
+        };
+    }
+
+    private static void bindField(PreparedStatement stmt, int index, Book book, Book.Field field) throws SQLException {
+        switch (field) {
+            case TITLE -> stmt.setString(index, book.getTitle());
+            case AUTHOR -> stmt.setString(index, book.getAuthor());
+            case ISBN -> stmt.setString(index, book.getIsbn());
+            case GENRE -> stmt.setString(index, book.getGenre());
+            case STATUS -> stmt.setString(index, book.getStatus().name());
+            case ADDED_DATE -> stmt.setDate(index, book.getAddedDate() != null ? Date.valueOf(book.getAddedDate()) : null);
+            case DUE_DATE -> stmt.setDate(index, book.getDueDate() != null ? Date.valueOf(book.getDueDate()) : null);
+            case PRIORITY -> stmt.setObject(index, book.getPriority(), Types.INTEGER);
+            case TOTAL_PAGES -> stmt.setObject(index, book.getTotalPages(), Types.INTEGER);
+            case PAGES_READ -> stmt.setObject(index, book.getPagesRead(), Types.INTEGER);
+        }
+    }
+
+    private boolean bookExists(Long id) {
+        try (Connection connection = DatabaseConnection.getConnection();
+             PreparedStatement stmt = connection.prepareStatement("SELECT 1 FROM books WHERE id = ?")) {
+            stmt.setLong(1, id);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        } catch (SQLException e) {
+            System.err.println("Ошибка проверки книги: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Читает книгу по позициям столбцов {@link #BOOK_COLUMNS}, без поиска столбцов по имени.
+     */
+    static Book resultSetToBook(ResultSet rs) throws SQLException {
         Book book = new Book();
-        book.setId(rs.getLong("id"));
-        book.setTitle(rs.getString("title"));
-        book.setAuthor(rs.getString("author"));
-        book.setIsbn(rs.getString("isbn"));
-        book.setGenre(rs.getString("genre"));
-        book.setStatus(com.library.model.BookStatus.valueOf(rs.getString("status")));
-        book.setAddedDate(rs.getDate("added_date").toLocalDate());
-
-        Date dueDate = rs.getDate("due_date");
+        book.setId(rs.getLong(1));
+        book.setTitle(rs.getString(2));
+        book.setAuthor(rs.getString(3));
+        book.setIsbn(rs.getString(4));
+        book.setGenre(rs.getString(5));
+        book.setStatus(com.library.model.BookStatus.valueOf(rs.getString(6)));
+        book.setAddedDate(rs.getDate(7).toLocalDate());
+
+        Date dueDate = rs.getDate(8);
         if (dueDate != null) book.setDueDate(dueDate.toLocalDate());
 
-        book.setPriority(rs.getInt("priority"));
-        book.setTotalPages(rs.getInt("total_pages"));
-        book.setPagesRead(rs.getInt("pages_read"));
+        book.setPriority(rs.getInt(9));
+        book.setTotalPages(rs.getInt(10));
+        book.setPagesRead(rs.getInt(11));
+        book.setVersion(rs.getLong(12));
+        book.markClean();
 
         return book;
     }
@@ -0,0 +1,176 @@
+package com.library.dao.impl;
+
+import com.library.util.DatabaseConnection;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Версионированная схема PostgreSQL. Каждая миграция выполняется в своей транзакции и
+ * записывается в таблицу {@code schema_version}; при старте применяются только миграции,
+ * которых в ней нет. Одновременный старт нескольких экземпляров упорядочивает
+ * рекомендательная блокировка. Необязательная миграция (например, требующая расширения)
+ * при ошибке пропускается, не останавливая следующие, и повторяется при следующем старте.
+ * <p>
+ * Миграции написаны через {@code IF NOT EXISTS}, поэтому база, созданная до появления
+ * {@code schema_version}, проходит их без ошибок. Новые изменения схемы добавляются
+ * в конец списка со следующим номером; примененные миграции не меняются.
+ */
+final class SchemaMigrator {
+    private static final long LOCK_KEY = 0x626F6F6B73L; // "books"
+    // Индексы частых фильтров; их использование проверяет PostgresIndexTest
+    static final String GENRE_INDEX = "books_genre_lower_idx";
+    static final String STATUS_INDEX = "books_status_idx";
+    static final String OPEN_DUE_DATE_INDEX = "books_due_date_open_idx";
+
+    private static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "Таблица books", false, """
+                    CREATE TABLE IF NOT EXISTS books (
+                        id SERIAL PRIMARY KEY,
+                        title VARCHAR(255) NOT NULL,
+                        author VARCHAR(255) NOT NULL,
+                        isbn VARCHAR(20),
+                        genre VARCHAR(100),
+                        status VARCHAR(20) NOT NULL,
+                        added_date DATE DEFAULT CURRENT_DATE,
+                        due_date DATE,
+                        priority INTEGER DEFAULT 1,
+                        total_pages INTEGER,
+                        pages_read INTEGER DEFAULT 0
+                    )
+                    """),
+            // Выражения совпадают с порядками сортировки PostgresBookDAO
+            new Migration(2, "Индексы сортировки", false,
+                    "CREATE INDEX IF NOT EXISTS books_title_sort_idx ON books (LOWER(title), id)",
+                    "CREATE INDEX IF NOT EXISTS books_author_sort_idx ON books (LOWER(author), id)",
+                    "CREATE INDEX IF NOT EXISTS books_due_date_sort_idx ON books (COALESCE(due_date, 'infinity'::date), id)",
+                    "CREATE INDEX IF NOT EXISTS books_priority_sort_idx ON books (priority, id)"),
+            // Без расширения pg_trgm поиск через ILIKE работает, но последовательным просмотром
+            new Migration(3, "Триграммные индексы поиска", true,
+                    "CREATE EXTENSION IF NOT EXISTS pg_trgm",
+                    "CREATE INDEX IF NOT EXISTS books_title_trgm_idx ON books USING GIN (title gin_trgm_ops)",
+                    "CREATE INDEX IF NOT EXISTS books_author_trgm_idx ON books USING GIN (author gin_trgm_ops)",
+                    "CREATE INDEX IF NOT EXISTS books_isbn_trgm_idx ON books USING GIN (isbn gin_trgm_ops)",
+                    "CREATE INDEX IF NOT EXISTS books_genre_trgm_idx ON books USING GIN (genre gin_trgm_ops)"),
+            // Вычисляемый tsvector с русской и английской морфологией для полнотекстового поиска
+            new Migration(4, "Полнотекстовый поиск", true, """
+                    ALTER TABLE books ADD COLUMN IF NOT EXISTS search_vector tsvector GENERATED ALWAYS AS (
+                        setweight(to_tsvector('russian', coalesce(title, '')), 'A') ||
+                        setweight(to_tsvector('english', coalesce(title, '')), 'A') ||
+                        setweight(to_tsvector('russian', coalesce(author, '')), 'B') ||
+                        setweight(to_tsvector('english', coalesce(author, '')), 'B') ||
+                        setweight(to_tsvector('simple', coalesce(genre, '')), 'C') ||
+                        setweight(to_tsvector('simple', coalesce(isbn, '')), 'D')
+                    ) STORED
+                    """,
+                    "CREATE INDEX IF NOT EXISTS books_search_vector_idx ON books USING GIN (search_vector)"),
+            // Номер изменения строки для оптимистической проверки в updateBook
+            new Migration(5, "Версия строки", false,
+                    "ALTER TABLE books ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0"),
+            // Индексы частых фильтров: filterByGenre, filterByStatus, getOverdueBooks и markOverdue.
+            // Частичный индекс не хранит завершенные книги — обычно их большинство
+            new Migration(6, "Индексы фильтров", false,
+                    "CREATE INDEX IF NOT EXISTS " + GENRE_INDEX + " ON books (LOWER(genre))",
+                    "CREATE INDEX IF NOT EXISTS " + STATUS_INDEX + " ON books (status)",
+                    "CREATE INDEX IF NOT EXISTS " + OPEN_DUE_DATE_INDEX
+                            + " ON books (due_date) WHERE status <> 'COMPLETED'")
+    );
+
+    private SchemaMigrator() {
+    }
+
+    /**
+     * Применяет недостающие миграции. Ошибки выводятся, но не прерывают работу приложения,
+     * как и прежнее создание таблицы.
+     */
+    static void migrate() {
+        try (Connection connection = DatabaseConnection.getConnection()) {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("SELECT pg_advisory_lock(" + LOCK_KEY + ")");
+            }
+            try {
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute("""
+                            CREATE TABLE IF NOT EXISTS schema_version (
+                                version INTEGER PRIMARY KEY,
+                                description TEXT NOT NULL,
+                                applied_at TIMESTAMPTZ NOT NULL DEFAULT now()
+                            )
+                            """);
+                }
+                Set<Integer> applied = appliedVersions(connection);
+                for (Migration migration : MIGRATIONS) {
+                    if (applied.contains(migration.version())) {
+                        continue;
+                    }
+                    if (!apply(connection, migration) && !migration.optional()) {
+                        break; // Следующие миграции могут опираться на эту
+                    }
+                }
+            } finally {
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute("SELECT pg_advisory_unlock(" + LOCK_KEY + ")");
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Ошибка миграции схемы: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Наибольший примененный номер миграции или {@code 0}, если миграций еще не было.
+     */
+    static int currentVersion(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    // Вспомогательные методы
+
+    private static Set<Integer> appliedVersions(Connection connection) throws SQLException {
+        Set<Integer> versions = new HashSet<>();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT version FROM schema_version")) {
+            while (rs.next()) {
+                versions.add(rs.getInt(1));
+            }
+        }
+        return versions;
+    }
+
+    private static boolean apply(Connection connection, Migration migration) throws SQLException {
+        connection.setAutoCommit(false);
+        try (Statement stmt = connection.createStatement();
+             PreparedStatement record = connection.prepareStatement(
+                     "INSERT INTO schema_version (version, description) VALUES (?, ?)")) {
+            for (String sql : migration.statements()) {
+                stmt.execute(sql);
+            }
+            record.setInt(1, migration.version());
+            record.setString(2, migration.description());
+            record.executeUpdate();
+            connection.commit();
+            System.out.println("Применена миграция схемы " + migration.version() + ": " + migration.description());
+            return true;
+        } catch (SQLException e) {
+            connection.rollback();
+            System.err.println((migration.optional() ? "Пропущена миграция схемы " : "Ошибка миграции схемы ")
+                    + migration.version() + " (" + migration.description() + "): " + e.getMessage());
+            return false;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private record Migration(int version, String description, boolean optional, String... statements) {
+    }
+}
@@ -0,0 +1,129 @@
+package com.library.dao.impl;
+
+import com.library.model.Book;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Отсортированные представления хранилища в памяти: по названию, автору, сроку возврата
+ * и приоритету (по убыванию). Порядок тот же, что давала сортировка полного списка:
+ * при равных ключах — по id, книги без ключа — в конце. Изменение книги перекладывает ее
+ * в каждом представлении за O(log n), так что сортировка на каждый запрос не нужна, а
+ * представление по сроку дает выборку диапазона дат.
+ * <p>
+ * Ключ книги запоминается при добавлении: выданный объект могут изменить до сохранения,
+ * и удалять его нужно по старому ключу. Не потокобезопасно.
+ */
+final class SortedBookViews {
+    private final View<String> byTitle = new View<>(Book::getTitle, Comparator.naturalOrder());
+    private final View<String> byAuthor = new View<>(Book::getAuthor, Comparator.naturalOrder());
+    private final View<LocalDate> byDueDate = new View<>(Book::getDueDate, Comparator.naturalOrder());
+    private final View<Integer> byPriority = new View<>(Book::getPriority, Comparator.reverseOrder());
+
+    void put(Book book) {
+        byTitle.put(book);
+        byAuthor.put(book);
+        byDueDate.put(book);
+        byPriority.put(book);
+    }
+
+    void remove(Long id) {
+        byTitle.remove(id);
+        byAuthor.remove(id);
+        byDueDate.remove(id);
+        byPriority.remove(id);
+    }
+
+    void rebuild(Iterable<Book> books) {
+        clear();
+        for (Book book : books) {
+            put(book);
+        }
+    }
+
+    void clear() {
+        byTitle.clear();
+        byAuthor.clear();
+        byDueDate.clear();
+        byPriority.clear();
+    }
+
+    Collection<Book> byTitle() {
+        return byTitle.books.values();
+    }
+
+    Collection<Book> byAuthor() {
+        return byAuthor.books.values();
+    }
+
+    Collection<Book> byDueDate() {
+        return byDueDate.books.values();
+    }
+
+    Collection<Book> byPriority() {
+        return byPriority.books.values();
+    }
+
+    /**
+     * Книги со сроком в диапазоне {@code [from, to]} по сроку, затем по id.
+     */
+    Collection<Book> dueBetween(LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            return List.of();
+        }
+        return byDueDate.books.subMap(new Key<>(from, Long.MIN_VALUE), true,
+                new Key<>(to, Long.MAX_VALUE), true).values();
+    }
+
+    /**
+     * Книги со сроком раньше {@code date}.
+     */
+    Collection<Book> dueBefore(LocalDate date) {
+        return byDueDate.books.headMap(new Key<>(date, Long.MIN_VALUE), false).values();
+    }
+
+    private record Key<K>(K value, long id) {
+    }
+
+    private static final class View<K> {
+        private final Function<Book, K> keyOf;
+        private final NavigableMap<Key<K>, Book> books;
+        private final Map<Long, Key<K>> keys = new HashMap<>();
+
+        View(Function<Book, K> keyOf, Comparator<K> order) {
+            this.keyOf = keyOf;
+            Comparator<Key<K>> byValue = Comparator.comparing(Key::value, Comparator.nullsLast(order));
+            this.books = new TreeMap<>(byValue.thenComparingLong(Key::id));
+        }
+
+        void put(Book book) {
+            Key<K> key = new Key<>(keyOf.apply(book), book.getId());
+            Key<K> old = keys.put(book.getId(), key);
+            if (old != null && !Objects.equals(old.value(), key.value())) {
+                books.remove(old);
+            }
+            books.put(key, book);
+        }
+
+        void remove(Long id) {
+            Key<K> old = keys.remove(id);
+            if (old != null) {
+                books.remove(old);
+            }
+        }
+
+        void clear() {
+            books.clear();
+            keys.clear();
+        }
+    }
+}
@@ -1,8 +1,24 @@
 package com.library.model;
 
 import java.time.LocalDate;
-
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Книга. Помнит, какие поля изменены с момента загрузки из хранилища: DAO записывает только
+ * их, а книгу без изменений не записывает вовсе. Новая книга считается измененной целиком.
+ * Версия — номер изменения записи в хранилище для оптимистической проверки при обновлении.
+ */
 public class Book {
+    /**
+     * Сохраняемые поля книги (кроме id).
+     */
+    public enum Field {
+        TITLE, AUTHOR, ISBN, GENRE, STATUS, ADDED_DATE, DUE_DATE, PRIORITY, TOTAL_PAGES, PAGES_READ
+    }
+
     private Long id;
     private String title;
     private String author;
@@ -14,6 +30,8 @@ public class Book {
     private Integer priority;
     private Integer totalPages;
     private Integer pagesRead;
+    private Long version;
+    private final EnumSet<Field> dirtyFields = EnumSet.allOf(Field.class);
 
     public Book() {
     }
@@ -32,39 +50,65 @@ public class Book {
         this.pagesRead = pagesRead;
     }
 
+    public Book(Book other) {
+        this(other.id, other.title, other.author, other.isbn, other.genre, other.status,
+                other.addedDate, other.dueDate, other.priority, other.totalPages, other.pagesRead);
+        this.version = other.version;
+        this.dirtyFields.retainAll(other.dirtyFields);
+    }
+
     // Геттеры и сеттеры
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
 
     public String getTitle() { return title; }
-    public void setTitle(String title) { this.title = title; }
+    public void setTitle(String title) { markDirty(Field.TITLE, this.title, title); this.title = title; }
 
     public String getAuthor() { return author; }
-    public void setAuthor(String author) { this.author = author; }
+    public void setAuthor(String author) { markDirty(Field.AUTHOR, this.author, author); this.author = author; }
 
     public String getIsbn() { return isbn; }
-    public void setIsbn(String isbn) { this.isbn = isbn; }
+    public void setIsbn(String isbn) { markDirty(Field.ISBN, this.isbn, isbn); this.isbn = isbn; }
 
     public String getGenre() { return genre; }
-    public void setGenre(String genre) { this.genre = genre; }
+    public void setGenre(String genre) { markDirty(Field.GENRE, this.genre, genre); this.genre = genre; }
 
     public BookStatus getStatus() { return status; }
-    public void setStatus(BookStatus status) { this.status = status; }
+    public void setStatus(BookStatus status) { markDirty(Field.STATUS, this.status, status); this.status = status; }
 
     public LocalDate getAddedDate() { return addedDate; }
-    public void setAddedDate(LocalDate addedDate) { this.addedDate = addedDate; }
+    public void setAddedDate(LocalDate addedDate) { markDirty(Field.ADDED_DATE, this.addedDate, addedDate); this.addedDate = addedDate; }
 
     public LocalDate getDueDate() { return dueDate; }
-    public void setDueDate(LocalDate dueDate) { this.dueDate = dueDate; }
+    public void setDueDate(LocalDate dueDate) { markDirty(Field.DUE_DATE, this.dueDate, dueDate); this.dueDate = dueDate; }
 
     public Integer getPriority() { return priority; }
-    public void setPriority(Integer priority) { this.priority = priority; }
+    public void setPriority(Integer priority) { markDirty(Field.PRIORITY, this.priority, priority); this.priority = priority; }
 
     public Integer getTotalPages() { return totalPages; }
-    public void setTotalPages(Integer totalPages) { this.totalPages = totalPages; }
+    public void setTotalPages(Integer totalPages) { markDirty(Field.TOTAL_PAGES, this.totalPages, totalPages); this.totalPages = totalPages; }
 
     public Integer getPagesRead() { return pagesRead; }
-    public void setPagesRead(Integer pagesRead) { this.pagesRead = pagesRead; }
+    public void setPagesRead(Integer pagesRead) { markDirty(Field.PAGES_READ, this.pagesRead, pagesRead); this.pagesRead = pagesRead; }
+
+    public Long getVersion() { return version; }
+    public void setVersion(Long version) { this.version = version; }
+
+    // Отслеживание изменений
+    public boolean isDirty() { return !dirtyFields.isEmpty(); }
+
+    public Set<Field> getDirtyFields() { return Collections.unmodifiableSet(EnumSet.copyOf(dirtyFields)); }
+
+    /**
+     * Отмечает книгу как совпадающую с хранилищем: вызывается DAO после загрузки и записи.
+     */
+    public void markClean() { dirtyFields.clear(); }
+
+    private void markDirty(Field field, Object oldValue, Object newValue) {
+        if (!Objects.equals(oldValue, newValue)) {
+            dirtyFields.add(field);
+        }
+    }
 
     // Дополнительные методы
     public Double getReadingProgress() {
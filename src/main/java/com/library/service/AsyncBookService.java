@@ -0,0 +1,176 @@
+package com.library.service;
+
+import com.library.dao.BookDAO;
+import com.library.model.Book;
+import com.library.model.BookStatus;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Асинхронный фасад над {@link BookService}: каждая операция выполняется в отдельном
+ * виртуальном потоке и возвращает {@link CompletableFuture}, так что поток интерфейса
+ * не ждет базу данных или разбор CSV. Одновременно к хранилищу идет не больше
+ * {@link BookDAO#maxConcurrency()} операций, остальные ждут очереди.
+ * <p>
+ * Отмена ({@code cancel}) снимает операцию, которая еще ждет очереди. Уже начатая операция
+ * доводится до конца, чтобы не прервать запись на полпути, но ее результат отбрасывается.
+ */
+public class AsyncBookService implements AutoCloseable {
+    private static final int WAITING = 0;
+    private static final int RUNNING = 1;
+    private static final int CANCELLED = 2;
+    private static final long CLOSE_TIMEOUT_SECONDS = 10;
+
+    private final BookService bookService;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    // Ограничение на каждое хранилище: сервис можно переключить на другой DAO
+    private final Map<BookDAO, Semaphore> limits = new ConcurrentHashMap<>();
+
+    public AsyncBookService(BookService bookService) {
+        this.bookService = bookService;
+    }
+
+    // CRUD операции
+    public CompletableFuture<Long> addBook(Book book) {
+        return submit(() -> bookService.addBook(book));
+    }
+
+    public CompletableFuture<List<Long>> addBooks(Collection<Book> books) {
+        return submit(() -> bookService.addBooks(books));
+    }
+
+    public CompletableFuture<Boolean> updateBook(Book book) {
+        return submit(() -> bookService.updateBook(book));
+    }
+
+    public CompletableFuture<Boolean> deleteBook(Long id) {
+        return submit(() -> bookService.deleteBook(id));
+    }
+
+    public CompletableFuture<Book> getBookById(Long id) {
+        return submit(() -> bookService.getBookById(id));
+    }
+
+    public CompletableFuture<List<Book>> getAllBooks() {
+        return submit(bookService::getAllBooks);
+    }
+
+    // Управление статусами
+    public CompletableFuture<Boolean> updateBookStatus(Long id, BookStatus status) {
+        return submit(() -> bookService.updateBookStatus(id, status));
+    }
+
+    public CompletableFuture<List<Long>> checkAndUpdateOverdueBooks() {
+        return submit(bookService::checkAndUpdateOverdueBooks);
+    }
+
+    public CompletableFuture<List<Long>> markOverdue(Collection<Long> ids, LocalDate today) {
+        return submit(() -> bookService.markOverdue(ids, today));
+    }
+
+    // Фильтрация и поиск
+    public CompletableFuture<List<Book>> searchBooks(String keyword) {
+        return submit(() -> bookService.searchBooks(keyword));
+    }
+
+    public CompletableFuture<List<Book>> filterByStatus(BookStatus status) {
+        return submit(() -> bookService.filterByStatus(status));
+    }
+
+    public CompletableFuture<List<Book>> filterByGenre(String genre) {
+        return submit(() -> bookService.filterByGenre(genre));
+    }
+
+    public CompletableFuture<Book> importBookByISBN(String isbn) {
+        return submit(() -> bookService.importBookByISBN(isbn));
+    }
+
+    public CompletableFuture<List<Book>> getUpcomingDueBooks(int daysThreshold) {
+        return submit(() -> bookService.getUpcomingDueBooks(daysThreshold));
+    }
+
+    // Сортировка
+    public CompletableFuture<List<Book>> sortByDueDate() {
+        return submit(bookService::sortByDueDate);
+    }
+
+    public CompletableFuture<List<Book>> sortByPriority() {
+        return submit(bookService::sortByPriority);
+    }
+
+    // Рекомендации и аналитика
+    public CompletableFuture<List<Book>> getRecommendedBooks(String favoriteGenre) {
+        return submit(() -> bookService.getRecommendedBooks(favoriteGenre));
+    }
+
+    public CompletableFuture<String> getReadingSpeedAnalysis(Long bookId) {
+        return submit(() -> bookService.getReadingSpeedAnalysis(bookId));
+    }
+
+    /**
+     * Перестает принимать новые операции и ждет уже отправленные (в том числе стоящие
+     * в очереди к хранилищу) не дольше {@value #CLOSE_TIMEOUT_SECONDS} с, чтобы при выходе
+     * не потерять сохранение. Не успевшие операции после этого прерываются.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                System.err.println("Операции с книгами не завершились за " + CLOSE_TIMEOUT_SECONDS + " с и будут прерваны");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Вспомогательные методы
+
+    private <T> CompletableFuture<T> submit(Callable<T> action) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Semaphore limit = limits.computeIfAbsent(bookService.getBookDAO(),
+                dao -> new Semaphore(Math.max(1, dao.maxConcurrency()), true));
+        AtomicInteger state = new AtomicInteger(WAITING);
+
+        Future<?> task = executor.submit(() -> {
+            try {
+                limit.acquire();
+            } catch (InterruptedException e) {
+                result.cancel(false);
+                return;
+            }
+            try {
+                // После этой точки поток больше не прерывается отменой
+                if (!state.compareAndSet(WAITING, RUNNING)) {
+                    return;
+                }
+                result.complete(action.call());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            } finally {
+                limit.release();
+            }
+        });
+
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled() && state.compareAndSet(WAITING, CANCELLED)) {
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+}
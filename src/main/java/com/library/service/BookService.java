@@ -5,11 +5,15 @@ import com.library.model.Book;
 import com.library.model.BookStatus;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class BookService {
     private BookDAO bookDAO;
+    private OverdueScheduler overdueScheduler;
 
     public BookService(BookDAO bookDAO) {
         this.bookDAO = bookDAO;
@@ -17,21 +21,60 @@ public class BookService {
 
     public void setBookDAO(BookDAO bookDAO) {
         this.bookDAO = bookDAO;
+        if (overdueScheduler != null) {
+            overdueScheduler.reload();
+        }
+    }
+
+    /**
+     * Планировщик, которому сообщаются сроки возврата сохраненных книг.
+     */
+    public void setOverdueScheduler(OverdueScheduler overdueScheduler) {
+        this.overdueScheduler = overdueScheduler;
+    }
+
+    public BookDAO getBookDAO() {
+        return bookDAO;
     }
 
     // CRUD операции
     public Long addBook(Book book) {
         validateBook(book);
-        return bookDAO.addBook(book);
+        Long id = bookDAO.addBook(book);
+        if (id != null && overdueScheduler != null) {
+            overdueScheduler.track(id, book);
+        }
+        return id;
+    }
+
+    public List<Long> addBooks(Collection<Book> books) {
+        books.forEach(this::validateBook);
+        List<Long> ids = bookDAO.addBooks(books);
+        if (overdueScheduler != null && ids.size() == books.size()) {
+            // Id выдаются в порядке книг
+            int i = 0;
+            for (Book book : books) {
+                overdueScheduler.track(ids.get(i++), book);
+            }
+        }
+        return ids;
     }
 
     public boolean updateBook(Book book) {
         validateBook(book);
-        return bookDAO.updateBook(book);
+        boolean updated = bookDAO.updateBook(book);
+        if (updated && overdueScheduler != null) {
+            overdueScheduler.track(book.getId(), book);
+        }
+        return updated;
     }
 
     public boolean deleteBook(Long id) {
-        return bookDAO.deleteBook(id);
+        boolean deleted = bookDAO.deleteBook(id);
+        if (deleted && overdueScheduler != null) {
+            overdueScheduler.untrack(List.of(id));
+        }
+        return deleted;
     }
 
     public Book getBookById(Long id) {
@@ -60,19 +103,26 @@ public class BookService {
         return false;
     }
 
-    public void checkAndUpdateOverdueBooks() {
-        List<Book> books = bookDAO.getAllBooks();
-        LocalDate today = LocalDate.now();
+    /**
+     * Отмечает просроченные книги одной операцией хранилища и возвращает их id.
+     */
+    public List<Long> checkAndUpdateOverdueBooks() {
+        return untrack(bookDAO.markOverdue(LocalDate.now()));
+    }
 
-        for (Book book : books) {
-            if (book.getDueDate() != null &&
-                    book.getDueDate().isBefore(today) &&
-                    book.getStatus() != com.library.model.BookStatus.COMPLETED) {
+    /**
+     * Отмечает просроченными книги из {@code ids}, которые на {@code today} действительно
+     * просрочены и не завершены, и возвращает id измененных.
+     */
+    public List<Long> markOverdue(Collection<Long> ids, LocalDate today) {
+        return untrack(bookDAO.markOverdue(ids, today));
+    }
 
-                book.setStatus(com.library.model.BookStatus.OVERDUE);
-                bookDAO.updateBook(book);
-            }
+    private List<Long> untrack(List<Long> ids) {
+        if (overdueScheduler != null && !ids.isEmpty()) {
+            overdueScheduler.untrack(ids);
         }
+        return ids;
     }
 
     // Фильтрация и поиск
@@ -105,15 +155,15 @@ public class BookService {
         return null;
     }
 
+    /**
+     * Книги со сроком возврата от сегодня до {@code daysThreshold} дней вперед, по сроку.
+     */
     public List<Book> getUpcomingDueBooks(int daysThreshold) {
-        return bookDAO.getAllBooks().stream()
-                .filter(book -> book.getDueDate() != null)
-                .filter(book -> {
-                    long daysUntilDue = java.time.temporal.ChronoUnit.DAYS.between(
-                            LocalDate.now(), book.getDueDate());
-                    return daysUntilDue <= daysThreshold && daysUntilDue >= 0;
-                })
-                .collect(Collectors.toList());
+        if (daysThreshold < 0) {
+            return new ArrayList<>();
+        }
+        LocalDate today = LocalDate.now();
+        return bookDAO.getBooksDueBetween(today, today.plusDays(daysThreshold));
     }
 
     // Сортировка
@@ -127,11 +177,12 @@ public class BookService {
 
     // Логика рекомендательной системы
     public List<Book> getRecommendedBooks(String favoriteGenre) {
-        return bookDAO.getAllBooks().stream()
-                .filter(book -> favoriteGenre.equalsIgnoreCase(book.getGenre()))
-                .filter(book -> book.getStatus() != com.library.model.BookStatus.COMPLETED)
-                .sorted((b1, b2) -> Integer.compare(b2.getPriority(), b1.getPriority()))
-                .collect(Collectors.toList());
+        try (Stream<Book> books = bookDAO.streamByGenre(favoriteGenre)) {
+            return books
+                    .filter(book -> book.getStatus() != com.library.model.BookStatus.COMPLETED)
+                    .sorted((b1, b2) -> Integer.compare(b2.getPriority(), b1.getPriority()))
+                    .collect(Collectors.toList());
+        }
     }
 
     // Логика расчета скорости чтения
@@ -0,0 +1,260 @@
+package com.library.service;
+
+import com.library.dao.BookDAO;
+import com.library.model.Book;
+import com.library.model.BookStatus;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Фоновая отметка просроченных книг. Незавершенные книги со сроком возврата стоят в очереди
+ * по сроку; запуск планируется на начало дня после ближайшего срока и переводит в OVERDUE
+ * только книги, чей срок прошел, пачками через {@link BookDAO#markOverdue(Collection, LocalDate)}.
+ * Работа запуска пропорциональна числу просроченных книг, а не размеру каталога.
+ * <p>
+ * Очередь пополняет {@link BookService} после каждого изменения книг. Весь каталог читается
+ * только в {@link #start()} и при смене хранилища. Записи идут через {@link AsyncBookService}
+ * и поэтому соблюдают ограничение параллельности хранилища.
+ */
+public class OverdueScheduler implements AutoCloseable {
+    private static final int BATCH_SIZE = 500;
+    private static final long RETRY_DELAY_MILLIS = 60_000;
+    // Долгое ожидание разбивается на части, чтобы перевод системных часов не сдвигал запуск
+    private static final long MAX_DELAY_MILLIS = 3_600_000;
+
+    private final AsyncBookService bookService;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "overdue-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Все поля ниже защищены this. В очереди могут лежать устаревшие элементы: действителен
+    // только тот, чей срок совпадает с записанным в dueDates
+    private final PriorityQueue<Entry> queue =
+            new PriorityQueue<>(Comparator.comparing(Entry::dueDate).thenComparing(Entry::id));
+    private final Map<Long, LocalDate> dueDates = new HashMap<>();
+    // Изменения, пришедшие во время последнего перечитывания каталога; null — книга больше
+    // не отслеживается. Перечитывания могут пересекаться (смена хранилища во время старта):
+    // применяется только последнее, по номеру в reloadGeneration
+    private Map<Long, LocalDate> changesDuringReload;
+    private long reloadGeneration;
+    private ScheduledFuture<?> nextRun;
+    private Instant nextRunAt;
+    private boolean closed;
+
+    public OverdueScheduler(AsyncBookService bookService) {
+        this.bookService = bookService;
+    }
+
+    /**
+     * Отмечает уже просроченные книги и строит очередь по всему каталогу.
+     */
+    public void start() {
+        reload();
+    }
+
+    /**
+     * Перестраивает очередь заново, например после смены хранилища.
+     */
+    public void reload() {
+        long generation;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            generation = ++reloadGeneration;
+            changesDuringReload = new HashMap<>();
+        }
+        bookService.checkAndUpdateOverdueBooks()
+                .thenCompose(marked -> bookService.getAllBooks())
+                .whenComplete((books, error) -> {
+                    synchronized (this) {
+                        if (generation != reloadGeneration) {
+                            return; // Начато более позднее перечитывание — этот каталог уже устарел
+                        }
+                        Map<Long, LocalDate> changes = changesDuringReload;
+                        changesDuringReload = null;
+                        if (error != null) {
+                            System.err.println("Ошибка загрузки сроков возврата: " + unwrap(error).getMessage());
+                            return;
+                        }
+                        queue.clear();
+                        dueDates.clear();
+                        for (Book book : books) {
+                            put(book.getId(), trackedDueDate(book));
+                        }
+                        changes.forEach(this::put);
+                        reschedule();
+                    }
+                });
+    }
+
+    /**
+     * Учитывает сохраненное состояние книги: срок, статус или удаление срока.
+     */
+    public synchronized void track(Long id, Book book) {
+        if (id == null) {
+            return;
+        }
+        record(id, trackedDueDate(book));
+    }
+
+    public synchronized void untrack(Collection<Long> ids) {
+        for (Long id : ids) {
+            record(id, null);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        executor.shutdownNow();
+    }
+
+    // Вспомогательные методы
+
+    private void record(Long id, LocalDate dueDate) {
+        if (changesDuringReload != null) {
+            changesDuringReload.put(id, dueDate);
+        }
+        put(id, dueDate);
+        reschedule();
+    }
+
+    private void put(Long id, LocalDate dueDate) {
+        if (dueDate == null) {
+            dueDates.remove(id);
+            return;
+        }
+        if (dueDate.equals(dueDates.put(id, dueDate))) {
+            return;
+        }
+        queue.add(new Entry(dueDate, id));
+        if (queue.size() > 2 * dueDates.size() + 1024) {
+            // Слишком много устаревших элементов — собираем очередь заново
+            queue.clear();
+            dueDates.forEach((bookId, date) -> queue.add(new Entry(date, bookId)));
+        }
+    }
+
+    /**
+     * Планирует запуск на начало дня после ближайшего срока, если он раньше уже
+     * запланированного.
+     */
+    private void reschedule() {
+        if (closed) {
+            return;
+        }
+        Entry next = peekValid();
+        if (next == null) {
+            return;
+        }
+        Instant dueAt = next.dueDate().plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant();
+        if (nextRun != null && !nextRunAt.isAfter(dueAt)) {
+            return;
+        }
+        if (nextRun != null) {
+            nextRun.cancel(false);
+        }
+        long delay = Math.max(0, Duration.between(Instant.now(), dueAt).toMillis());
+        schedule(Math.min(delay, MAX_DELAY_MILLIS));
+    }
+
+    private void schedule(long delayMillis) {
+        nextRunAt = Instant.now().plusMillis(delayMillis);
+        nextRun = executor.schedule(this::run, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void run() {
+        LocalDate today = LocalDate.now();
+        List<Entry> due = new ArrayList<>();
+        synchronized (this) {
+            nextRun = null;
+            while (!queue.isEmpty() && queue.peek().dueDate().isBefore(today)) {
+                Entry entry = queue.poll();
+                if (entry.dueDate().equals(dueDates.get(entry.id()))) {
+                    dueDates.remove(entry.id());
+                    due.add(entry);
+                }
+            }
+        }
+
+        for (int from = 0; from < due.size(); from += BATCH_SIZE) {
+            List<Long> batch = new ArrayList<>();
+            for (Entry entry : due.subList(from, Math.min(from + BATCH_SIZE, due.size()))) {
+                batch.add(entry.id());
+            }
+            try {
+                // Хранилище само перепроверяет срок и статус, поэтому книга, завершенная
+                // после постановки в очередь, не изменится
+                bookService.markOverdue(batch, today).join();
+            } catch (CompletionException | CancellationException e) {
+                System.err.println("Ошибка отметки просроченных книг: " + unwrap(e).getMessage());
+                retry(due.subList(from, due.size()));
+                return;
+            }
+        }
+
+        synchronized (this) {
+            reschedule();
+        }
+    }
+
+    private synchronized void retry(List<Entry> entries) {
+        for (Entry entry : entries) {
+            // Книгу могли изменить, пока запись не удавалась: новое состояние важнее
+            if (!dueDates.containsKey(entry.id())) {
+                put(entry.id(), entry.dueDate());
+            }
+        }
+        if (!closed) {
+            if (nextRun != null) {
+                nextRun.cancel(false);
+            }
+            schedule(RETRY_DELAY_MILLIS);
+        }
+    }
+
+    private Entry peekValid() {
+        while (!queue.isEmpty()) {
+            Entry head = queue.peek();
+            if (head.dueDate().equals(dueDates.get(head.id()))) {
+                return head;
+            }
+            queue.poll();
+        }
+        return null;
+    }
+
+    private static LocalDate trackedDueDate(Book book) {
+        if (book == null || book.getDueDate() == null
+                || book.getStatus() == BookStatus.COMPLETED || book.getStatus() == BookStatus.OVERDUE) {
+            return null;
+        }
+        return book.getDueDate();
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private record Entry(LocalDate dueDate, Long id) {
+    }
+}
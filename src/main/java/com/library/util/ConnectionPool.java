@@ -0,0 +1,546 @@
+package com.library.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ограниченный пул соединений JDBC. Соединение выдается на одну операцию и возвращается
+ * в пул вызовом {@link Connection#close()}. Простаивавшее соединение проверяется перед
+ * выдачей, лишние простаивающие соединения закрываются фоновым потоком, соединения с
+ * сетевой ошибкой (SQLState класса 08) в пул не возвращаются.
+ * <p>
+ * Каждое физическое соединение хранит LRU-кэш подготовленных запросов: повторный
+ * {@code prepareStatement(sql)} с тем же текстом возвращает уже подготовленный оператор,
+ * а его {@code close()} только сбрасывает параметры. Вместе с {@code prepareThreshold}
+ * драйвера это позволяет частым запросам использовать подготовленный на сервере план.
+ */
+public final class ConnectionPool implements AutoCloseable {
+    private static final long VALIDATION_INTERVAL_MILLIS = 5_000;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final Config config;
+    private final Semaphore permits;
+    // Голова очереди — последнее возвращенное соединение, хвост — дольше всех простаивающее
+    private final Deque<PhysicalConnection> idle = new ArrayDeque<>();
+    private final ScheduledExecutorService evictor;
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder destroyed = new LongAdder();
+    private final LongAdder checkouts = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+    private volatile boolean closed;
+
+    public ConnectionPool(Config config) {
+        this.config = config;
+        this.permits = new Semaphore(config.maxSize, true);
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "connection-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1_000, Math.min(config.idleTimeoutMillis / 2, 30_000));
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Настройки пула. Каждое значение ищется в системном свойстве {@code library.<ключ>},
+     * затем в переменной окружения {@code LIBRARY_<КЛЮЧ>} (точки заменяются на '_'),
+     * затем в {@code db.properties} из classpath.
+     */
+    public static final class Config {
+        private String url = "jdbc:postgresql://localhost:5432/library";
+        private String user = "postgres";
+        private String password = "password";
+        private int maxSize = 10;
+        private int minIdle = 1;
+        private long idleTimeoutMillis = 10 * 60 * 1000;
+        private long connectionTimeoutMillis = 30 * 1000;
+        private int statementCacheSize = 64;
+        private int prepareThreshold = 1;
+        private int driverStatementCacheQueries = 256;
+
+        public static Config load() {
+            Properties file = new Properties();
+            try (InputStream in = ConnectionPool.class.getClassLoader().getResourceAsStream("db.properties")) {
+                if (in != null) {
+                    file.load(in);
+                }
+            } catch (IOException e) {
+                System.err.println("Ошибка чтения db.properties: " + e.getMessage());
+            }
+
+            Config config = new Config();
+            config.url = setting(file, "db.url", config.url);
+            config.user = setting(file, "db.user", config.user);
+            config.password = setting(file, "db.password", config.password);
+            config.maxSize = Math.max(1, Integer.parseInt(setting(file, "db.pool.maxSize", String.valueOf(config.maxSize))));
+            config.minIdle = Integer.parseInt(setting(file, "db.pool.minIdle", String.valueOf(config.minIdle)));
+            config.idleTimeoutMillis = Long.parseLong(setting(file, "db.pool.idleTimeoutMillis", String.valueOf(config.idleTimeoutMillis)));
+            config.connectionTimeoutMillis = Long.parseLong(setting(file, "db.pool.connectionTimeoutMillis", String.valueOf(config.connectionTimeoutMillis)));
+            config.statementCacheSize = Math.max(0, Integer.parseInt(setting(file, "db.pool.statementCacheSize", String.valueOf(config.statementCacheSize))));
+            config.prepareThreshold = Integer.parseInt(setting(file, "db.prepareThreshold", String.valueOf(config.prepareThreshold)));
+            config.driverStatementCacheQueries = Integer.parseInt(setting(file, "db.preparedStatementCacheQueries", String.valueOf(config.driverStatementCacheQueries)));
+            return config;
+        }
+
+        private static String setting(Properties file, String key, String defaultValue) {
+            String value = System.getProperty("library." + key);
+            if (value == null) {
+                value = System.getenv("LIBRARY_" + key.toUpperCase().replace('.', '_'));
+            }
+            if (value == null) {
+                value = file.getProperty(key);
+            }
+            return value != null ? value : defaultValue;
+        }
+
+        /**
+         * Свойства драйвера PostgreSQL: запрос готовится на сервере уже с первого выполнения
+         * ({@code prepareThreshold}), драйвер помнит серверные операторы соединения
+         * ({@code preparedStatementCacheQueries}).
+         */
+        private Properties driverProperties() {
+            Properties properties = new Properties();
+            properties.setProperty("user", user);
+            properties.setProperty("password", password);
+            properties.setProperty("prepareThreshold", String.valueOf(prepareThreshold));
+            properties.setProperty("preparedStatementCacheQueries", String.valueOf(driverStatementCacheQueries));
+            return properties;
+        }
+    }
+
+    /**
+     * Снимок счетчиков пула.
+     */
+    public record Metrics(int active, int idle, int waiting, long created, long destroyed,
+                          long checkouts, long timeouts, double averageWaitMillis,
+                          long statementHits, long statementMisses) {
+    }
+
+    /**
+     * Выдает соединение, ожидая свободное место в пуле не дольше {@code connectionTimeoutMillis}.
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Пул соединений закрыт");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(config.connectionTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.increment();
+                throw new SQLTimeoutException("Нет свободного соединения за " + config.connectionTimeoutMillis + " мс");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Ожидание соединения прервано", e);
+        }
+        waitNanos.add(System.nanoTime() - start);
+
+        try {
+            PhysicalConnection physical = takeIdle();
+            if (physical == null) {
+                physical = new PhysicalConnection(DriverManager.getConnection(config.url, config.driverProperties()));
+                created.increment();
+            }
+            checkouts.increment();
+            active.incrementAndGet();
+            return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new PooledConnection(physical));
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public int maxSize() {
+        return config.maxSize;
+    }
+
+    public Metrics metrics() {
+        int idleCount;
+        synchronized (idle) {
+            idleCount = idle.size();
+        }
+        long count = checkouts.sum();
+        return new Metrics(active.get(), idleCount, permits.getQueueLength(), created.sum(), destroyed.sum(),
+                count, timeouts.sum(), count == 0 ? 0 : waitNanos.sum() / 1e6 / count,
+                statementHits.sum(), statementMisses.sum());
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        List<PhysicalConnection> drained;
+        synchronized (idle) {
+            drained = new ArrayList<>(idle);
+            idle.clear();
+        }
+        drained.forEach(this::destroy);
+    }
+
+    // Вспомогательные методы
+
+    private PhysicalConnection takeIdle() {
+        while (true) {
+            PhysicalConnection candidate;
+            synchronized (idle) {
+                candidate = idle.pollFirst();
+            }
+            if (candidate == null) {
+                return null;
+            }
+            if (System.currentTimeMillis() - candidate.returnedAt < VALIDATION_INTERVAL_MILLIS
+                    || isValid(candidate.connection)) {
+                return candidate;
+            }
+            destroy(candidate);
+        }
+    }
+
+    private void release(PhysicalConnection physical, boolean broken) {
+        active.decrementAndGet();
+        try {
+            Connection connection = physical.connection;
+            if (!broken && !closed && !connection.isClosed()) {
+                // Незавершенная транзакция откатывается, настройки возвращаются к умолчаниям
+                if (!connection.getAutoCommit()) {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+                connection.clearWarnings();
+                physical.releaseStatements();
+                physical.returnedAt = System.currentTimeMillis();
+                synchronized (idle) {
+                    idle.addFirst(physical);
+                }
+                return;
+            }
+        } catch (SQLException e) {
+            // Соединение не удалось вернуть в исходное состояние — закрываем его
+        } finally {
+            permits.release();
+        }
+        destroy(physical);
+    }
+
+    private void evictIdle() {
+        List<PhysicalConnection> expired = new ArrayList<>();
+        long deadline = System.currentTimeMillis() - config.idleTimeoutMillis;
+        synchronized (idle) {
+            Iterator<PhysicalConnection> oldestFirst = idle.descendingIterator();
+            while (oldestFirst.hasNext() && idle.size() > config.minIdle) {
+                PhysicalConnection candidate = oldestFirst.next();
+                if (candidate.returnedAt > deadline) {
+                    break;
+                }
+                oldestFirst.remove();
+                expired.add(candidate);
+            }
+        }
+        expired.forEach(this::destroy);
+    }
+
+    private boolean isValid(Connection connection) {
+        try {
+            return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void destroy(PhysicalConnection physical) {
+        destroyed.increment();
+        try {
+            // Закрытие соединения закрывает и все его подготовленные операторы
+            physical.connection.close();
+        } catch (SQLException e) {
+            System.err.println("Ошибка закрытия соединения: " + e.getMessage());
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            // Оператор уже не используется, ошибка закрытия не важна
+        }
+    }
+
+    private static boolean isConnectionError(Throwable error) {
+        return error instanceof SQLException sql && sql.getSQLState() != null && sql.getSQLState().startsWith("08");
+    }
+
+    /**
+     * Физическое соединение вместе с кэшем подготовленных на нем операторов.
+     * Соединением в каждый момент пользуется один владелец, поэтому кэш не синхронизирован.
+     */
+    private final class PhysicalConnection {
+        private final Connection connection;
+        private final Map<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() <= config.statementCacheSize) {
+                    return false;
+                }
+                eldest.getValue().evict();
+                return true;
+            }
+        };
+        private long returnedAt;
+
+        PhysicalConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * Оператор для текста {@code sql}: из кэша, если он свободен, иначе новый. Если тот же
+         * запрос уже открыт на этом соединении, второй оператор не кэшируется.
+         */
+        PreparedStatement prepare(String sql, PooledConnection pooled, Connection owner) throws SQLException {
+            CachedStatement cached = statements.get(sql);
+            if (cached != null && !cached.inUse) {
+                statementHits.increment();
+                return cached.checkout(pooled, owner);
+            }
+            statementMisses.increment();
+            PreparedStatement statement = connection.prepareStatement(sql);
+            if (cached != null || config.statementCacheSize == 0) {
+                StatementHandle handle = new StatementHandle(statement, null, pooled, owner);
+                return (PreparedStatement) handle.proxy(PreparedStatement.class);
+            }
+            cached = new CachedStatement(statement);
+            statements.put(sql, cached);
+            return cached.checkout(pooled, owner);
+        }
+
+        /**
+         * Освобождает операторы, которые владелец соединения забыл закрыть.
+         */
+        void releaseStatements() {
+            for (CachedStatement cached : statements.values()) {
+                if (cached.inUse) {
+                    cached.checkin();
+                }
+            }
+        }
+    }
+
+    /**
+     * Подготовленный оператор из кэша соединения. Пока он выдан, им пользуется одна обертка;
+     * вытесненный из кэша оператор закрывается, как только его вернут.
+     */
+    private static final class CachedStatement {
+        private final PreparedStatement statement;
+        private StatementHandle handle;
+        private boolean inUse;
+        private boolean evicted;
+
+        CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        PreparedStatement checkout(PooledConnection pooled, Connection owner) {
+            inUse = true;
+            handle = new StatementHandle(statement, this, pooled, owner);
+            return (PreparedStatement) handle.proxy(PreparedStatement.class);
+        }
+
+        void checkin() {
+            handle.closed = true;
+            handle = null;
+            inUse = false;
+            if (evicted) {
+                closeQuietly(statement);
+                return;
+            }
+            try {
+                // Открытый результат закрывается (у оператора он не больше одного: повторное
+                // выполнение закрывает предыдущий), параметры и размер выборки сбрасываются
+                ResultSet open = statement.getResultSet();
+                if (open != null) {
+                    open.close();
+                }
+                statement.clearParameters();
+                statement.setFetchSize(0);
+                statement.clearWarnings();
+            } catch (SQLException e) {
+                evicted = true;
+                closeQuietly(statement);
+            }
+        }
+
+        void evict() {
+            evicted = true;
+            if (!inUse) {
+                closeQuietly(statement);
+            }
+        }
+    }
+
+    /**
+     * Обертка над оператором соединения из пула: {@code close()} возвращает кэшированный
+     * оператор в кэш, а некэшированный закрывает; после этого обертка больше не пропускает
+     * вызовы. Сетевая ошибка при выполнении помечает соединение, чтобы оно не вернулось в пул.
+     */
+    private static final class StatementHandle implements InvocationHandler {
+        private final Statement statement;
+        private final CachedStatement cached;
+        private final PooledConnection pooled;
+        private final Connection owner;
+        private boolean closed;
+
+        StatementHandle(Statement statement, CachedStatement cached, PooledConnection pooled, Connection owner) {
+            this.statement = statement;
+            this.cached = cached;
+            this.pooled = pooled;
+            this.owner = owner;
+        }
+
+        Object proxy(Class<?> type) {
+            return Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(), new Class<?>[]{type}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (!closed) {
+                        if (cached != null) {
+                            cached.checkin();
+                        } else {
+                            closed = true;
+                            statement.close();
+                        }
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return closed || owner.isClosed() || statement.isClosed();
+                }
+                case "getConnection" -> {
+                    return owner;
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return (cached != null ? "Cached" : "Pooled") + statement;
+                }
+                default -> {
+                    if (closed || owner.isClosed()) {
+                        throw new SQLException("Оператор уже закрыт");
+                    }
+                }
+            }
+
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                if (isConnectionError(e.getCause())) {
+                    pooled.broken = true;
+                }
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Обертка над физическим соединением: {@code close()} возвращает его в пул,
+     * после возврата обертка больше не пропускает вызовы.
+     */
+    private final class PooledConnection implements InvocationHandler {
+        private final PhysicalConnection physical;
+        private boolean returned;
+        // Выставляется и из оберток операторов, которые вызываются без блокировки соединения
+        private volatile boolean broken;
+
+        PooledConnection(PhysicalConnection physical) {
+            this.physical = physical;
+        }
+
+        @Override
+        public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (!returned) {
+                        returned = true;
+                        release(physical, broken);
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return returned || physical.connection.isClosed();
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "Pooled" + physical.connection;
+                }
+                default -> {
+                    if (returned) {
+                        throw new SQLException("Соединение уже возвращено в пул");
+                    }
+                }
+            }
+
+            try {
+                if (method.getName().equals("prepareStatement") && args.length == 1) {
+                    return physical.prepare((String) args[0], this, (Connection) proxy);
+                }
+                Object result = method.invoke(physical.connection, args);
+                if (result instanceof Statement statement) {
+                    // Операторы вне кэша (createStatement, prepareCall, prepareStatement с
+                    // параметрами) тоже оборачиваются, чтобы их сетевые ошибки помечали соединение
+                    return new StatementHandle(statement, null, this, (Connection) proxy).proxy(method.getReturnType());
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                if (isConnectionError(e.getCause())) {
+                    broken = true;
+                }
+                throw e.getCause();
+            } catch (SQLException e) {
+                if (isConnectionError(e)) {
+                    broken = true;
+                }
+                throw e;
+            }
+        }
+    }
+}
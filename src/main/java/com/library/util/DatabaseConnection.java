@@ -1,24 +1,29 @@
 package com.library.util;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
 public class DatabaseConnection {
-    private static final String URL = "jdbc:postgresql://localhost:5432/library";
-    private static final String USER = "postgres";
-    private static final String PASSWORD = "password";
+    private static ConnectionPool pool;
 
-    private static Connection connection;
+    public static synchronized ConnectionPool getPool() {
+        if (pool == null) {
+            pool = new ConnectionPool(ConnectionPool.Config.load());
+        }
+        return pool;
+    }
+
+    /**
+     * Выдает соединение из пула; его нужно закрыть, чтобы вернуть в пул.
+     */
+    public static Connection getConnection() throws SQLException {
+        return getPool().getConnection();
+    }
 
-    public static Connection getConnection() {
-        try {
-            if (connection == null || connection.isClosed()) {
-                connection = DriverManager.getConnection(URL, USER, PASSWORD);
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException("Ошибка подключения к БД", e);
+    public static synchronized void shutdown() {
+        if (pool != null) {
+            pool.close();
+            pool = null;
         }
-        return connection;
     }
 }
\ No newline at end of file
@@ -0,0 +1,171 @@
+package com.library.dao.impl;
+
+import com.library.model.Book;
+import com.library.model.BookStatus;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Нагрузочная проверка CSVBookDAO: потоки одновременно добавляют и обновляют книги через два
+ * экземпляра DAO на одном файле (как UI и пакетное задание). После работы в файле должны
+ * оказаться все добавленные книги с разными id и все обновления.
+ */
+class CSVBookDAOConcurrencyTest {
+    private static final int THREADS = 8;
+    private static final int BOOKS_PER_THREAD = 50;
+    private static final int PAGES_READ = 7;
+    private static final int COMPACTED_BOOKS = 100_000;
+
+    @TempDir
+    Path dir;
+
+    @ParameterizedTest
+    @ValueSource(strings = {"plain", "offsetIndex", "logStructured"})
+    void concurrentAddsAndUpdatesAreNotLost(String mode) throws Exception {
+        String file = dir.resolve("books.csv").toString();
+        List<String> titles = new ArrayList<>();
+
+        try (CSVBookDAO first = new CSVBookDAO(file, options(mode));
+             CSVBookDAO second = new CSVBookDAO(file, options(mode))) {
+            ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<List<Long>>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                CSVBookDAO dao = t % 2 == 0 ? first : second;
+                List<String> threadTitles = new ArrayList<>();
+                for (int i = 0; i < BOOKS_PER_THREAD; i++) {
+                    threadTitles.add("Книга " + t + "-" + i);
+                }
+                titles.addAll(threadTitles);
+                results.add(executor.submit(worker(dao, threadTitles, start)));
+            }
+            start.countDown();
+
+            Set<Long> ids = new HashSet<>();
+            for (Future<List<Long>> result : results) {
+                ids.addAll(result.get(2, TimeUnit.MINUTES));
+            }
+            executor.shutdown();
+            assertEquals(THREADS * BOOKS_PER_THREAD, ids.size(), "id выданы повторно");
+        }
+
+        List<Book> books = new CSVBookDAO(file).getAllBooks();
+        assertEquals(THREADS * BOOKS_PER_THREAD, books.size());
+        Set<String> stored = new HashSet<>();
+        for (Book book : books) {
+            stored.add(book.getTitle());
+            assertEquals(PAGES_READ, book.getPagesRead(), "потеряно обновление книги " + book.getId());
+        }
+        assertEquals(new HashSet<>(titles), stored);
+    }
+
+    @Test
+    void updatesDuringCompactionAreKept() throws Exception {
+        String file = dir.resolve("books.csv").toString();
+        List<Long> updated = new ArrayList<>();
+
+        try (CSVBookDAO dao = new CSVBookDAO(file, logWithIndex())) {
+            List<Book> books = new ArrayList<>();
+            for (int i = 0; i < COMPACTED_BOOKS; i++) {
+                books.add(newBook("Книга " + i));
+            }
+            List<Long> ids = dao.addBooks(books);
+            assertEquals(COMPACTED_BOOKS, ids.size());
+
+            // Новая версия той же длины, что и прежняя: раньше она перезаписывалась на месте
+            Thread compaction = new Thread(dao::compact);
+            compaction.start();
+            for (int i = 0; compaction.isAlive() && i < ids.size(); i++) {
+                Book book = dao.getBookById(ids.get(i)).orElseThrow();
+                book.setPagesRead(PAGES_READ);
+                assertTrue(dao.updateBook(book), "книга не обновлена: " + book.getId());
+                updated.add(book.getId());
+            }
+            compaction.join();
+            assertFalse(updated.isEmpty(), "уплотнение закончилось раньше первого обновления");
+
+            for (Long id : updated) {
+                assertEquals(PAGES_READ, dao.getBookById(id).orElseThrow().getPagesRead(),
+                        "потеряно обновление книги " + id);
+            }
+        }
+
+        // Журнал читается как журнал: последняя версия записи лежит в его хвосте
+        CSVBookDAO reopened = new CSVBookDAO(file, logWithIndex());
+        for (Long id : updated) {
+            assertEquals(PAGES_READ, reopened.getBookById(id).orElseThrow().getPagesRead(),
+                    "потеряно обновление книги " + id);
+        }
+    }
+
+    // Вспомогательные методы
+
+    private static Callable<List<Long>> worker(CSVBookDAO dao, List<String> titles, CountDownLatch start) {
+        return () -> {
+            start.await();
+            List<Long> ids = new ArrayList<>();
+            for (String title : titles) {
+                Long id = dao.addBook(newBook(title));
+                assertNotNull(id, "книга не добавлена: " + title);
+                ids.add(id);
+                if (ids.size() % 10 == 0) {
+                    dao.getAllBooks();
+                }
+            }
+            for (Long id : ids) {
+                Book book = dao.getBookById(id).orElseThrow();
+                book.setPagesRead(PAGES_READ);
+                assertTrue(dao.updateBook(book), "книга не обновлена: " + id);
+            }
+            return ids;
+        };
+    }
+
+    private static CSVBookDAO.Options options(String mode) {
+        CSVBookDAO.Options options = CSVBookDAO.Options.defaults();
+        switch (mode) {
+            case "offsetIndex" -> options.offsetIndex();
+            case "logStructured" -> options.logStructured(0.5);
+            default -> {
+            }
+        }
+        return options;
+    }
+
+    private static CSVBookDAO.Options logWithIndex() {
+        // Порог уплотнения высокий, чтобы фоновое уплотнение не запустилось само
+        return CSVBookDAO.Options.defaults().offsetIndex().logStructured(0.99);
+    }
+
+    private static Book newBook(String title) {
+        Book book = new Book();
+        book.setTitle(title);
+        book.setAuthor("Автор");
+        book.setStatus(BookStatus.ACTIVE);
+        book.setAddedDate(LocalDate.of(2024, 1, 1));
+        book.setPriority(1);
+        book.setTotalPages(100);
+        book.setPagesRead(0);
+        return book;
+    }
+}
@@ -0,0 +1,142 @@
+package com.library.dao.impl;
+
+import com.library.model.Book;
+import com.library.model.BookStatus;
+import com.opencsv.CSVReader;
+import com.opencsv.exceptions.CsvException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор books.csv: прежний путь через OpenCSV {@code readAll} и преобразование строк
+ * против {@link CsvBookDecoder}. Результат считается на одну запись; выделение памяти
+ * на запись показывает {@code gc.alloc.rate.norm} профилировщика GC.
+ * <p>
+ * Запуск: {@code mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java
+ * "-Dexec.args=-cp %classpath com.library.dao.impl.CsvDecodeBenchmark"}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@OperationsPerInvocation(CsvDecodeBenchmark.ROWS)
+public class CsvDecodeBenchmark {
+    static final int ROWS = 10_000;
+
+    private Path file;
+    private final CsvBookDecoder decoder = new CsvBookDecoder();
+
+    @Setup(Level.Trial)
+    public void createFile() throws IOException {
+        file = Files.createTempFile("books-bench", ".csv");
+        BookStatus[] statuses = BookStatus.values();
+        LocalDate start = LocalDate.of(2024, 1, 1);
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("\"id\",\"title\",\"author\",\"isbn\",\"genre\",\"status\",\"added_date\","
+                    + "\"due_date\",\"priority\",\"total_pages\",\"pages_read\"\n");
+            for (int i = 1; i <= ROWS; i++) {
+                String dueDate = i % 3 == 0 ? "" : start.plusDays(i % 365).toString();
+                writer.write(String.join(",",
+                        quote(String.valueOf(i)),
+                        quote("Книга номер " + i),
+                        quote("Автор " + (i % 500)),
+                        quote("978-5-" + (100000 + i)),
+                        quote(i % 4 == 0 ? "" : "Жанр " + (i % 20)),
+                        quote(statuses[i % statuses.length].name()),
+                        quote(start.plusDays(i % 90).toString()),
+                        quote(dueDate),
+                        quote(String.valueOf(i % 10)),
+                        quote(String.valueOf(100 + i % 900)),
+                        quote(String.valueOf(i % 100))));
+                writer.write('\n');
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void openCsv(Blackhole blackhole) throws IOException, CsvException {
+        try (CSVReader reader = new CSVReader(new FileReader(file.toFile(), StandardCharsets.UTF_8))) {
+            List<String[]> rows = reader.readAll();
+            for (int i = 1; i < rows.size(); i++) {
+                blackhole.consume(convertRowToBook(rows.get(i)));
+            }
+        }
+    }
+
+    @Benchmark
+    public void mappedDecoder(Blackhole blackhole) throws IOException {
+        ByteBuffer buffer = CsvBookDecoder.map(file);
+        decoder.decode(buffer, 0, buffer.limit(), true, book -> {
+            blackhole.consume(book);
+            return true;
+        });
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(CsvDecodeBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+
+    // Вспомогательные методы
+
+    private static String quote(String value) {
+        return '"' + value + '"';
+    }
+
+    /**
+     * Преобразование строки, которым CSVBookDAO пользовался до перехода на декодер.
+     */
+    private static Book convertRowToBook(String[] row) {
+        Book book = new Book();
+        book.setId(Long.parseLong(row[0]));
+        book.setTitle(row[1]);
+        book.setAuthor(row[2]);
+        book.setIsbn(row[3].isEmpty() ? null : row[3]);
+        book.setGenre(row[4].isEmpty() ? null : row[4]);
+        book.setStatus(BookStatus.valueOf(row[5]));
+        book.setAddedDate(LocalDate.parse(row[6]));
+        book.setDueDate(row[7].isEmpty() ? null : LocalDate.parse(row[7]));
+        book.setPriority(Integer.parseInt(row[8]));
+        book.setTotalPages(Integer.parseInt(row[9]));
+        book.setPagesRead(Integer.parseInt(row[10]));
+        return book;
+    }
+}
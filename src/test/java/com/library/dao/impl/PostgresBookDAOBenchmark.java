@@ -0,0 +1,201 @@
+package com.library.dao.impl;
+
+import com.library.model.Book;
+import com.library.model.BookStatus;
+import com.library.util.DatabaseConnection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PostgresBookDAO на настоящей базе из db.properties:
+ * <ul>
+ *     <li>{@code mapByName} / {@code mapByPosition} — разбор строки результата по именам столбцов
+ *     (как было) и по позициям; результат считается на строку, запрос в замер не входит;</li>
+ *     <li>{@code getBookById} — поиск по id через пул; параметры задают размер кэша
+ *     подготовленных запросов пула и {@code prepareThreshold} драйвера ({@code 0}/{@code 5} —
+ *     прежнее поведение, {@code 64}/{@code 1} — текущие настройки).</li>
+ * </ul>
+ * Запуск: {@code mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java
+ * "-Dexec.args=-cp %classpath com.library.dao.impl.PostgresBookDAOBenchmark"}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PostgresBookDAOBenchmark {
+    static final int ROWS = 1000;
+
+    @State(Scope.Thread)
+    public static class Rows {
+        private Connection connection;
+        private ResultSet byName;
+        private ResultSet byPosition;
+
+        @Setup(Level.Trial)
+        public void query() throws SQLException {
+            seed(new PostgresBookDAO());
+            connection = DatabaseConnection.getConnection();
+            // Результаты с прокруткой целиком лежат в памяти, и замер перечитывает их с начала
+            byName = connection.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY)
+                    .executeQuery("SELECT * FROM books ORDER BY id LIMIT " + ROWS);
+            byPosition = connection.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY)
+                    .executeQuery(PostgresBookDAO.SELECT_BOOKS + " ORDER BY id LIMIT " + ROWS);
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws SQLException {
+            byName.getStatement().close();
+            byPosition.getStatement().close();
+            connection.close();
+            DatabaseConnection.shutdown();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Lookups {
+        @Param({"0", "64"})
+        public int statementCacheSize;
+
+        @Param({"5", "1"})
+        public int prepareThreshold;
+
+        private PostgresBookDAO dao;
+        private long[] ids;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void open() throws SQLException {
+            System.setProperty("library.db.pool.statementCacheSize", String.valueOf(statementCacheSize));
+            System.setProperty("library.db.prepareThreshold", String.valueOf(prepareThreshold));
+            DatabaseConnection.shutdown();
+            dao = new PostgresBookDAO();
+            ids = seed(dao);
+        }
+
+        @TearDown(Level.Trial)
+        public void close() {
+            DatabaseConnection.shutdown();
+        }
+
+        long nextId() {
+            next = (next + 1) % ids.length;
+            return ids[next];
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void mapByName(Rows rows, Blackhole blackhole) throws SQLException {
+        rows.byName.beforeFirst();
+        while (rows.byName.next()) {
+            blackhole.consume(mapByName(rows.byName));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void mapByPosition(Rows rows, Blackhole blackhole) throws SQLException {
+        rows.byPosition.beforeFirst();
+        while (rows.byPosition.next()) {
+            blackhole.consume(PostgresBookDAO.resultSetToBook(rows.byPosition));
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object getBookById(Lookups lookups) {
+        return lookups.dao.getBookById(lookups.nextId());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(PostgresBookDAOBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+    // Вспомогательные методы
+
+    /**
+     * Добавляет книги, если в таблице их меньше {@value #ROWS}, и возвращает id первых из них.
+     */
+    private static long[] seed(PostgresBookDAO dao) throws SQLException {
+        List<Book> books = new ArrayList<>();
+        for (int i = dao.getAllBooks().size(); i < ROWS; i++) {
+            Book book = new Book();
+            book.setTitle("Книга " + i);
+            book.setAuthor("Автор " + i % 50);
+            book.setIsbn("978-5-" + (100000 + i));
+            book.setGenre("Жанр " + i % 10);
+            book.setStatus(BookStatus.ACTIVE);
+            book.setAddedDate(LocalDate.of(2024, 1, 1));
+            book.setDueDate(i % 3 == 0 ? null : LocalDate.of(2024, 2, 1).plusDays(i % 60));
+            book.setPriority(i % 10);
+            book.setTotalPages(300);
+            book.setPagesRead(i % 300);
+            books.add(book);
+        }
+        dao.addBooks(books);
+
+        long[] ids = new long[ROWS];
+        try (Connection connection = DatabaseConnection.getConnection();
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id FROM books ORDER BY id LIMIT " + ROWS)) {
+            for (int i = 0; rs.next(); i++) {
+                ids[i] = rs.getLong(1);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Разбор строки, которым PostgresBookDAO пользовался до перехода на позиции столбцов.
+     */
+    private static Book mapByName(ResultSet rs) throws SQLException {
+        Book book = new Book();
+        book.setId(rs.getLong("id"));
+        book.setTitle(rs.getString("title"));
+        book.setAuthor(rs.getString("author"));
+        book.setIsbn(rs.getString("isbn"));
+        book.setGenre(rs.getString("genre"));
+        book.setStatus(BookStatus.valueOf(rs.getString("status")));
+        book.setAddedDate(rs.getDate("added_date").toLocalDate());
+
+        Date dueDate = rs.getDate("due_date");
+        if (dueDate != null) book.setDueDate(dueDate.toLocalDate());
+
+        book.setPriority(rs.getInt("priority"));
+        book.setTotalPages(rs.getInt("total_pages"));
+        book.setPagesRead(rs.getInt("pages_read"));
+
+        return book;
+    }
+}
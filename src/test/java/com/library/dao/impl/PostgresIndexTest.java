@@ -0,0 +1,105 @@
+package com.library.dao.impl;
+
+import com.library.util.DatabaseConnection;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Named;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Планы частых фильтров после миграций: {@code EXPLAIN} каждого запроса {@link PostgresBookDAO}
+ * должен читать свой индекс из {@link SchemaMigrator}. На время проверки последовательный
+ * просмотр запрещен — на маленькой таблице планировщик выбрал бы его законно, а если индекс
+ * к запросу не подходит, план все равно останется Seq Scan.
+ * <p>
+ * Нужна база из db.properties; если она не настроена или недоступна, тесты пропускаются.
+ */
+class PostgresIndexTest {
+
+    @BeforeAll
+    static void migrate() {
+        assumeTrue(databaseAvailable(), "PostgreSQL из db.properties недоступен");
+        // Применяет недостающие миграции
+        new PostgresBookDAO();
+    }
+
+    @AfterAll
+    static void shutdown() {
+        DatabaseConnection.shutdown();
+    }
+
+    static Stream<Named<Check>> checks() {
+        return Stream.of(
+                Named.of("filterByGenre", new Check(PostgresBookDAO.FILTER_BY_GENRE_SQL, SchemaMigrator.GENRE_INDEX,
+                        stmt -> stmt.setString(1, "Классика"))),
+                Named.of("filterByStatus", new Check(PostgresBookDAO.FILTER_BY_STATUS_SQL, SchemaMigrator.STATUS_INDEX,
+                        stmt -> stmt.setString(1, "ACTIVE"))),
+                Named.of("getOverdueBooks", new Check(PostgresBookDAO.OVERDUE_SQL, SchemaMigrator.OPEN_DUE_DATE_INDEX,
+                        stmt -> { })),
+                Named.of("markOverdue", new Check(PostgresBookDAO.MARK_OVERDUE_SQL, SchemaMigrator.OPEN_DUE_DATE_INDEX,
+                        stmt -> stmt.setDate(1, Date.valueOf(LocalDate.now()))))
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("checks")
+    void queryUsesIndex(Check check) throws SQLException {
+        try (Connection connection = DatabaseConnection.getConnection()) {
+            String plan = explain(connection, check);
+            assertTrue(plan.contains(check.index()), "Запрос не читает " + check.index() + ":\n" + plan);
+        }
+    }
+
+    // Вспомогательные методы
+
+    private static boolean databaseAvailable() {
+        try (Connection connection = DatabaseConnection.getConnection()) {
+            return connection.isValid(5);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static String explain(Connection connection, Check check) throws SQLException {
+        connection.setAutoCommit(false);
+        try {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("SET LOCAL enable_seqscan = off");
+            }
+            StringBuilder plan = new StringBuilder();
+            // EXPLAIN без ANALYZE не выполняет запрос, в том числе UPDATE из markOverdue
+            try (PreparedStatement stmt = connection.prepareStatement("EXPLAIN " + check.sql())) {
+                check.binder().bind(stmt);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        plan.append(rs.getString(1)).append('\n');
+                    }
+                }
+            }
+            return plan.toString();
+        } finally {
+            connection.rollback();
+            connection.setAutoCommit(true);
+        }
+    }
+
+    interface Binder {
+        void bind(PreparedStatement stmt) throws SQLException;
+    }
+
+    record Check(String sql, String index, Binder binder) {
+    }
+}